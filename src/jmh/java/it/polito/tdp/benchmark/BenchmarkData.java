@@ -0,0 +1,48 @@
+package it.polito.tdp.benchmark;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.db.SyntheticEventSource;
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Deterministic synthetic data for the benchmarks (from SyntheticEventSource),
+ * so they do not need the database
+ */
+public class BenchmarkData
+{
+	public static final Year YEAR = Year.of(2017);
+	public static final LocalDate DAY = LocalDate.of(2017, 3, 15);
+	
+	//enough events for stable district centres, without making setup too slow
+	private static final int EVENTS_PER_DISTRICT_PER_DAY = 2;
+
+
+	public static SyntheticEventSource source(int numDistricts, int meanEventsPerDay, long seed)
+	{
+		return new SyntheticEventSource(seed, numDistricts, YEAR, YEAR, meanEventsPerDay);
+	}
+
+	public static Map<Integer, LatLng> districtCenters(int numDistricts, Map<Integer, Integer> crimeCounts, long seed)
+	{
+		SyntheticEventSource source = source(numDistricts, EVENTS_PER_DISTRICT_PER_DAY * numDistricts, seed);
+		return source.getGeographicCenters(YEAR, crimeCounts);
+	}
+
+	public static Map<Integer, LatLng> districtCenters(int numDistricts, long seed)
+	{
+		return districtCenters(numDistricts, new HashMap<>(), seed);
+	}
+
+	public static List<Event> eventsOfDay(int numDistricts, int meanEventsPerDay, long seed)
+	{
+		return new ArrayList<>(source(numDistricts, meanEventsPerDay, seed).getCrimeEventsOn(DAY));
+	}
+}
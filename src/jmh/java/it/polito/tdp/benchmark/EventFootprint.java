@@ -0,0 +1,108 @@
+package it.polito.tdp.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import it.polito.tdp.crimes.db.EventCursor;
+import it.polito.tdp.crimes.db.SyntheticEventSource;
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Retained heap of a load of synthetic events (args[0], default one million), measured with
+ * JOL: the compact Event against BoxedEvent, the previous layout with boxed numbers, two
+ * references to one timestamp and its own strings per row, as read from a ResultSet. Not a JMH
+ * benchmark: java -cp target/benchmarks.jar it.polito.tdp.benchmark.EventFootprint
+ */
+public class EventFootprint
+{
+	private static final int EVENTS_PER_DAY = 1000;
+
+	public static void main(String[] args)
+	{
+		int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int numYears = numEvents / (EVENTS_PER_DAY * 365) + 1;
+
+		SyntheticEventSource source = new SyntheticEventSource(1L, 100, BenchmarkData.YEAR,
+				BenchmarkData.YEAR.plusYears(numYears - 1), EVENTS_PER_DAY);
+		LocalDate from = BenchmarkData.YEAR.atDay(1);
+
+		List<Event> events = new ArrayList<>(numEvents);
+
+		try(EventCursor cursor = source.openCrimeEventsCursor(from.atStartOfDay(),
+				Year.from(from).plusYears(numYears).atDay(1).atStartOfDay()))
+		{
+			while(cursor.hasNext() && events.size() < numEvents)
+				events.add(cursor.next());
+		}
+
+		List<BoxedEvent> boxedEvents = new ArrayList<>(events.size());
+		for(Event event : events)
+			boxedEvents.add(new BoxedEvent(event));
+
+		//the symbol tables are shared by all the events, but counted
+		GraphLayout compact = GraphLayout.parseInstance(events, Event.OFFENSE_TYPES,
+				Event.OFFENSE_CATEGORIES, Event.NEIGHBORHOODS);
+		GraphLayout boxed = GraphLayout.parseInstance(boxedEvents);
+
+		System.out.println(boxed.toFootprint());
+		System.out.println(compact.toFootprint());
+
+		System.out.printf("%d events%n", events.size());
+		System.out.printf("boxed   %,14d bytes  %6.1f bytes/event%n", boxed.totalSize(), (double)boxed.totalSize() / events.size());
+		System.out.printf("compact %,14d bytes  %6.1f bytes/event%n", compact.totalSize(), (double)compact.totalSize() / events.size());
+		System.out.printf("reduction %.1f%%%n", 100.0 * (boxed.totalSize() - compact.totalSize()) / boxed.totalSize());
+	}
+
+	//the previous Event: every column as the JDBC driver returns it
+	@SuppressWarnings("unused")
+	private static class BoxedEvent
+	{
+		private final LocalDateTime time;	//CrimeEvent's reference, to the same instance
+		private final Long incident_id;
+		private final Integer offense_code;
+		private final Integer offense_code_extension;
+		private final String offense_type_id;
+		private final String offense_category_id;
+		private final LocalDateTime reported_date;
+		private final String incident_address;
+		private final double geo_lon;
+		private final double geo_lat;
+		private final Integer district_id;
+		private final Integer precinct_id;
+		private final String neighborhood_id;
+		private final Integer is_crime;
+		private final Integer is_traffic;
+
+		BoxedEvent(Event event)
+		{
+			LocalDateTime reported_date = event.getReported_date();	//a new instance on every call
+
+			this.time = reported_date;
+			this.incident_id = event.getIncident_id();
+			this.offense_code = event.getOffense_code();
+			this.offense_code_extension = event.getOffense_code_extension();
+			this.offense_type_id = copy(event.getOffense_type_id());
+			this.offense_category_id = copy(event.getOffense_category_id());
+			this.reported_date = reported_date;
+			this.incident_address = copy(event.getIncident_address());
+			this.geo_lon = event.getGeo_lon();
+			this.geo_lat = event.getGeo_lat();
+			this.district_id = event.getDistrict_id();
+			this.precinct_id = event.getPrecinct_id();
+			this.neighborhood_id = copy(event.getNeighborhood_id());
+			this.is_crime = event.getIs_crime();
+			this.is_traffic = event.getIs_traffic();
+		}
+
+		//a ResultSet creates a new String for every row
+		private static String copy(String string)
+		{
+			return string == null ? null : new String(string);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package it.polito.tdp.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.db.EventStore;
+import it.polito.tdp.crimes.db.SyntheticEventSource;
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Reading the events of a day and the district centres of a year from the columnar
+ * EventStore (on the heap, or mapped from a snapshot file), against generating them
+ * with the synthetic source
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EventStoreBenchmark
+{
+	@Param({"100", "1000"})
+	public int eventsPerDay;
+
+	@Param({"heap", "snapshot"})
+	public String storage;
+
+	private SyntheticEventSource source;
+	private EventStore store;
+	private Path snapshot;
+
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		this.source = BenchmarkData.source(100, this.eventsPerDay, 1L);
+		this.store = EventStore.load(this.source);
+
+		this.snapshot = Files.createTempFile("events", ".snapshot");
+		this.store.writeSnapshot(this.snapshot);
+
+		if(this.storage.equals("snapshot"))
+			this.store = EventStore.openSnapshot(this.snapshot);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists(this.snapshot);
+	}
+
+	//cold start: header and dictionaries only
+	@Benchmark
+	public EventStore openSnapshot()
+	{
+		return EventStore.openSnapshot(this.snapshot);
+	}
+
+	@Benchmark
+	public Collection<Event> sourceEventsOn()
+	{
+		return this.source.getCrimeEventsOn(BenchmarkData.DAY);
+	}
+
+	//Events created from the columns
+	@Benchmark
+	public Event[] storeEventsOn()
+	{
+		return this.store.getCrimeEventsOn(BenchmarkData.DAY).toArray(new Event[0]);
+	}
+
+	//the columns only: no Event is created
+	@Benchmark
+	public long storeMonthScan()
+	{
+		EventStore.Slice month = this.store.eventsBetween(BenchmarkData.DAY, BenchmarkData.DAY.plusMonths(1));
+		long sum = 0;
+
+		for(int k=0; k<month.size(); k++)
+			sum += month.epochSecond(k) + month.districtId(k);
+
+		return sum;
+	}
+
+	@Benchmark
+	public Map<Integer, LatLng> storeGeographicCenters()
+	{
+		return this.store.getGeographicCenters(BenchmarkData.YEAR, new HashMap<>());
+	}
+
+	@Benchmark
+	public int storeDistrictQuarter()
+	{
+		LocalDate from = BenchmarkData.DAY;
+		return this.store.eventsOf(1, from, from.plusMonths(3)).size();
+	}
+}
@@ -0,0 +1,113 @@
+package it.polito.tdp.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javadocmd.simplelatlng.LatLng;
+import com.javadocmd.simplelatlng.LatLngTool;
+import com.javadocmd.simplelatlng.util.LengthUnit;
+
+import it.polito.tdp.crimes.model.DistrictGraphBuilder;
+import it.polito.tdp.crimes.model.Model;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GraphBenchmark
+{
+	//relative difference allowed between the batch kernel and simplelatlng
+	private static final double TOLERANCE = 1e-9;
+
+	@Param({"7", "100", "1000", "2000"})
+	public int numDistricts;
+
+	private Model model;
+	private Map<Integer, LatLng> centers;
+	private Map<Integer, Integer> crimeCounts;
+	private LatLng[] points;
+
+
+	@Setup
+	public void setUp()
+	{
+		this.model = new Model();
+		this.crimeCounts = new HashMap<>();
+		this.centers = BenchmarkData.districtCenters(this.numDistricts, this.crimeCounts, 1L);
+
+		DistrictGraphBuilder builder = DistrictGraphBuilder.of(this.centers.keySet(), this.centers);
+		this.points = new LatLng[builder.size()];
+		for(int i=0; i<this.points.length; i++)
+			this.points[i] = this.centers.get(builder.getDistrictIds()[i]);
+
+		this.checkAgainstLatLngTool(builder.computeDistances());
+	}
+
+	//the kernel must give the same distances as simplelatlng, or the comparison is meaningless
+	private void checkAgainstLatLngTool(double[] distances)
+	{
+		int n = this.points.length;
+
+		for(int i=0; i<n; i++)
+		{
+			for(int j=0; j<n; j++)
+			{
+				double expected = LatLngTool.distance(this.points[i], this.points[j], LengthUnit.KILOMETER);
+				double actual = distances[i * n + j];
+
+				if(Math.abs(actual - expected) > TOLERANCE * Math.max(1.0, expected))
+					throw new IllegalStateException(String.format("Error: distance %d-%d is %f km, simplelatlng gives %f km",
+							i, j, actual, expected));
+			}
+		}
+	}
+
+	@Benchmark
+	public Model createGraph()
+	{
+		this.model.createGraph(this.centers.keySet(), this.centers, this.crimeCounts);
+		return this.model;
+	}
+
+	//pairwise distances only, without loading them into the JGraphT graph
+	@Benchmark
+	public double[] computeDistances()
+	{
+		return DistrictGraphBuilder.of(this.centers.keySet(), this.centers).computeDistances();
+	}
+
+	//the same matrix with one LatLngTool call per pair, as the graph used to be built
+	@Benchmark
+	public double[] latLngToolDistances()
+	{
+		int n = this.points.length;
+		double[] distances = new double[n * n];
+
+		for(int i=0; i<n; i++)
+		{
+			for(int j=i+1; j<n; j++)
+			{
+				double distance = LatLngTool.distance(this.points[i], this.points[j], LengthUnit.KILOMETER);
+				distances[i * n + j] = distance;
+				distances[j * n + i] = distance;
+			}
+		}
+
+		return distances;
+	}
+}
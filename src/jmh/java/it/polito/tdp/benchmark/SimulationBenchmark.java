@@ -0,0 +1,74 @@
+package it.polito.tdp.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.Model;
+import it.polito.tdp.simulation.DistanceMatrix;
+import it.polito.tdp.simulation.Simulator;
+
+/**
+ * End-to-end Simulator.initialize() + run() over one synthetic day
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SimulationBenchmark
+{
+	private static final double SPEED_IN_KM_H = 60.0;
+
+	@Param({"7", "100", "1000"})
+	public int numDistricts;
+
+	@Param({"100", "10000", "1000000"})
+	public int eventsPerDay;	//mean of the synthetic source
+
+	@Param({"1", "10", "100"})
+	public int numAgents;
+
+	private DistanceMatrix distances;
+	private List<Event> events;
+
+
+	@Setup
+	public void setUp()
+	{
+		Model model = new Model();
+		Map<Integer, Integer> crimeCounts = new HashMap<>();
+		Map<Integer, LatLng> centers = BenchmarkData.districtCenters(this.numDistricts, crimeCounts, 1L);
+		model.createGraph(centers.keySet(), centers, crimeCounts);
+
+		this.distances = model.getDistanceMatrix();
+		this.events = BenchmarkData.eventsOfDay(this.numDistricts, this.eventsPerDay, 3L);
+	}
+
+	@Benchmark
+	public int run()
+	{
+		Simulator simulator = new Simulator(new SplittableRandom(4L));
+		simulator.initialize(this.distances, 1, this.events, this.numAgents);
+		simulator.run();
+		return simulator.getNumOfBadManagedEvents();
+	}
+}
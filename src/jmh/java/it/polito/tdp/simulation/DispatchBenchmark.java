@@ -0,0 +1,101 @@
+package it.polito.tdp.simulation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.benchmark.BenchmarkData;
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.Model;
+
+/**
+ * Single dispatch decisions (computeAgentInvolvedIn) and crime processing (processCrime),
+ * measured on a simulator initialised with a synthetic day. Lives in the simulation
+ * package to reach the package-private dispatch method.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DispatchBenchmark
+{
+	private static final int MEAN_EVENTS = 10000;
+
+	@Param({"7", "100", "1000"})
+	public int numDistricts;
+
+	@Param({"1", "10", "100"})
+	public int numAgents;
+
+	private DistanceMatrix distances;
+	private Event[] events;
+	private int[] eventDistricts;
+	private Simulator simulator;
+	private int agent;
+	private int next;
+
+
+	@Setup
+	public void setUp()
+	{
+		Model model = new Model();
+		Map<Integer, Integer> crimeCounts = new HashMap<>();
+		Map<Integer, LatLng> centers = BenchmarkData.districtCenters(this.numDistricts, crimeCounts, 1L);
+		model.createGraph(centers.keySet(), centers, crimeCounts);
+		this.distances = model.getDistanceMatrix();
+
+		List<Event> dayEvents = BenchmarkData.eventsOfDay(this.numDistricts, MEAN_EVENTS, 3L);
+		this.events = dayEvents.toArray(new Event[dayEvents.size()]);
+		this.eventDistricts = new int[this.events.length];
+		for(int i=0; i<this.events.length; i++)
+			this.eventDistricts[i] = this.distances.indexOf(this.events[i].getDistrict_id());
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpSimulator()
+	{
+		this.simulator = new Simulator(new SplittableRandom(4L));
+		this.simulator.initialize(this.distances, 1, List.of(this.events), this.numAgents);
+		this.agent = this.simulator.computeAgentInvolvedIn(0);
+		this.next = 0;
+	}
+
+	@Benchmark
+	public int computeAgentInvolvedIn()
+	{
+		int i = this.next++ % this.events.length;
+		return this.simulator.computeAgentInvolvedIn(this.eventDistricts[i]);
+	}
+
+	@Benchmark
+	public int processCrime()
+	{
+		int i = this.next++ % this.events.length;
+		this.simulator.processCrime(this.events[i], this.agent);
+		
+		//drop the scheduled free agent event, so the calendar does not grow with the iterations
+		EventCalendar eventsQueue = this.simulator.getEventsQueue();
+		eventsQueue.release(eventsQueue.poll());
+		
+		return this.simulator.getNumOfBadManagedEvents();
+	}
+}
@@ -0,0 +1,105 @@
+package it.polito.tdp.simulation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.benchmark.BenchmarkData;
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.Model;
+
+/**
+ * Cost of a dispatch cycle (select, dispatch and release of an agent) as the fleet grows.
+ * The fleet is spread over random districts and a share of it is kept busy, so that the
+ * nearest available agent is usually not in the crime's district; every cycle releases
+ * the dispatched agent in the crime's district, keeping the number of available agents constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FleetDispatchBenchmark
+{
+	private static final int MEAN_EVENTS = 10000;
+
+	@Param({"100", "1000"})
+	public int numDistricts;
+
+	@Param({"10", "100", "1000", "10000"})
+	public int numAgents;
+
+	@Param({"0.9"})
+	public double busyFraction;
+
+	@Param({"NEAREST_AVAILABLE", "ZONE_AFFINITY", "LEAST_RECENTLY_USED"})
+	public DispatchStrategy strategy;
+
+	private DispatchPolicy policy;
+	private int[] eventDistricts;
+	private int next;
+
+
+	@Setup
+	public void setUp()
+	{
+		Model model = new Model();
+		Map<Integer, Integer> crimeCounts = new HashMap<>();
+		Map<Integer, LatLng> centers = BenchmarkData.districtCenters(this.numDistricts, crimeCounts, 1L);
+		model.createGraph(centers.keySet(), centers, crimeCounts);
+		DistanceMatrix distances = model.getDistanceMatrix();
+
+		List<Event> dayEvents = BenchmarkData.eventsOfDay(this.numDistricts, MEAN_EVENTS, 3L);
+		this.eventDistricts = new int[dayEvents.size()];
+		for(int i=0; i<this.eventDistricts.length; i++)
+			this.eventDistricts[i] = distances.indexOf(dayEvents.get(i).getDistrict_id());
+
+		this.policy = this.strategy.newPolicy();
+		this.policy.initialize(distances, this.numAgents, 0);
+
+		//spread the fleet, then keep the busy share of it dispatched (at least one agent available)
+		SplittableRandom random = new SplittableRandom(5L);
+		int numBusy = Math.min((int)(this.numAgents * this.busyFraction), this.numAgents - 1);
+
+		for(int agent=0; agent<this.numAgents; agent++)
+		{
+			int district = random.nextInt(distances.size());
+			this.policy.agentDispatched(agent, district);
+			this.policy.agentReleased(agent, district, agent);
+		}
+		for(int agent=0; agent<numBusy; agent++)
+			this.policy.agentDispatched(agent, 0);
+
+		this.next = 0;
+	}
+
+	@Benchmark
+	public int dispatchCycle()
+	{
+		int i = this.next++;
+		int crimeDistrict = this.eventDistricts[i % this.eventDistricts.length];
+
+		int agent = this.policy.selectAgent(crimeDistrict);
+		this.policy.agentDispatched(agent, crimeDistrict);
+		this.policy.agentReleased(agent, crimeDistrict, this.numAgents + i);
+
+		return agent;
+	}
+}
@@ -0,0 +1,132 @@
+package it.polito.tdp.simulation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * All-pairs travel distances on graphs of random points: complete (Floyd–Warshall) and
+ * linking every point to its k nearest ones, as SpatialGraphBuilder does (Dijkstra), as chosen
+ * by ShortestPaths.allPairs()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class ShortestPathsBenchmark
+{
+	@Param({"500", "2000"})
+	public int numVertices;
+
+	@Param({"8", "0"})		//k nearest points, 0: complete graph
+	public int edgesPerVertex;
+
+	private int[] offsets;
+	private int[] targets;
+	private double[] weights;
+
+
+	@Setup
+	public void setUp()
+	{
+		int n = this.numVertices;
+		SplittableRandom random = new SplittableRandom(6L);
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for(int v=0; v<n; v++)
+		{
+			xs[v] = random.nextDouble() * 20.0;
+			ys[v] = random.nextDouble() * 20.0;
+		}
+
+		//each undirected edge once (complete: all the pairs), then stored in both directions
+		int maxEdges = this.edgesPerVertex == 0 ? n * (n - 1) / 2 : n * this.edgesPerVertex;
+		int[] sources = new int[maxEdges];
+		int[] ends = new int[maxEdges];
+		int e = 0;
+
+		if(this.edgesPerVertex == 0)
+		{
+			for(int v=0; v<n; v++)
+			{
+				for(int w=v+1; w<n; w++, e++)
+				{
+					sources[e] = v;
+					ends[e] = w;
+				}
+			}
+		}
+		else
+		{
+			//brute force k nearest: the setup is not measured
+			boolean[][] linked = new boolean[n][n];
+
+			for(int v=0; v<n; v++)
+			{
+				int from = v;
+				Integer[] byDistance = new Integer[n];
+				for(int w=0; w<n; w++)
+					byDistance[w] = w;
+				Arrays.sort(byDistance, Comparator.comparingDouble(w -> Math.hypot(xs[from] - xs[w], ys[from] - ys[w])));
+
+				for(int k=1; k<=Math.min(this.edgesPerVertex, n - 1); k++)	//byDistance[0] is v itself
+				{
+					int w = byDistance[k];
+					if(linked[v][w]) continue;
+
+					linked[v][w] = linked[w][v] = true;
+					sources[e] = v;
+					ends[e++] = w;
+				}
+			}
+		}
+
+		int numEdges = e;
+
+		this.offsets = new int[n + 1];
+		for(e=0; e<numEdges; e++)
+		{
+			this.offsets[sources[e] + 1]++;
+			this.offsets[ends[e] + 1]++;
+		}
+		for(int v=0; v<n; v++)
+			this.offsets[v + 1] += this.offsets[v];
+
+		int[] next = Arrays.copyOf(this.offsets, n);
+		this.targets = new int[2 * numEdges];
+		this.weights = new double[2 * numEdges];
+
+		for(e=0; e<numEdges; e++)
+		{
+			int v = sources[e];
+			int w = ends[e];
+			double weight = Math.hypot(xs[v] - xs[w], ys[v] - ys[w]);
+
+			this.targets[next[v]] = w;
+			this.weights[next[v]++] = weight;
+			this.targets[next[w]] = v;
+			this.weights[next[w]++] = weight;
+		}
+	}
+
+	@Benchmark
+	public double[] allPairs()
+	{
+		return ShortestPaths.allPairs(this.numVertices, this.offsets, this.targets, this.weights);
+	}
+}
@@ -1,7 +1,12 @@
 package it.polito.tdp.crimes;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 import javafx.application.Application;
 
+import it.polito.tdp.crimes.db.EventStore;
+import it.polito.tdp.crimes.db.EventsDao;
 import it.polito.tdp.crimes.model.Model;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -18,15 +23,30 @@ public class EntryPoint extends Application
     	Parent root = loader.load();
         Scene scene = new Scene(root);
          
-        Model model = new Model();
+        //the store is loaded by the controller's startup task, off the FX application thread
+        Model model = new Model(EntryPoint::openEventStore);
         FXMLController controller = loader.getController();
-        controller.setModel(model);
+        controller.setModel(model);	//also starts precomputing the graphs
         
         stage.setTitle("2019-06-05-simulazione");
         stage.setScene(scene);
         stage.show();
     }
 
+    /**
+     * The snapshot given by -Dcrimes.snapshot if it exists (see ExportSnapshot), otherwise the 
+     * database, read once: simulations and graphs then only work on the store
+     */
+    private static EventStore openEventStore()
+    {
+    	String snapshot = System.getProperty("crimes.snapshot");
+    	
+    	if(snapshot != null && Files.isRegularFile(Paths.get(snapshot)))
+    		return EventStore.openSnapshot(Paths.get(snapshot));
+    	
+    	return EventStore.load(new EventsDao());
+    }
+
     /**
      * The main() method is ignored in correctly deployed JavaFX application.
      * main() serves only as fallback in case the application can not be
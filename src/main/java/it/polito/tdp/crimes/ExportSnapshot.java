@@ -0,0 +1,24 @@
+package it.polito.tdp.crimes;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import it.polito.tdp.crimes.db.EventStore;
+import it.polito.tdp.crimes.db.EventsDao;
+
+/**
+ * Writes the events table into a snapshot file (args[0], default events.snapshot), which the
+ * application opens instead of the database when started with -Dcrimes.snapshot=<file>
+ */
+public class ExportSnapshot 
+{
+	public static void main(String[] args) 
+	{
+		Path file = Paths.get(args.length > 0 ? args[0] : "events.snapshot");
+		
+		EventStore store = EventStore.load(new EventsDao());
+		store.writeSnapshot(file);
+		
+		System.out.println(store.size() + " events written to " + file.toAbsolutePath());
+	}
+}
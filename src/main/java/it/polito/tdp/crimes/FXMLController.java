@@ -5,17 +5,20 @@ import java.time.LocalDate;
 import java.time.Month;
 import java.time.Year;
 import java.time.YearMonth;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
+import it.polito.tdp.crimes.model.AsyncModel;
 import it.polito.tdp.crimes.model.Model;
+import it.polito.tdp.simulation.DistrictAdjacency;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 
@@ -47,8 +50,24 @@ public class FXMLController
 
     @FXML
     private TextArea txtResult;
+
+    @FXML
+    private Button btnAnnulla;
+
+    @FXML
+    private ProgressBar progressBar;
     
-	private Model model;
+	private AsyncModel asyncModel;
+	private Task<?> runningTask;	//at most one at a time, the buttons are disabled meanwhile
+	private boolean graphCreated;	//by a task that succeeded: the model is only read by the tasks
+	
+	//the tasks' threads only wait for the model's executor
+	private final ExecutorService taskExecutor = Executors.newCachedThreadPool(task -> 
+	{
+		Thread thread = new Thread(task, "fx-model-task");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 
     @FXML
@@ -62,40 +81,37 @@ public class FXMLController
     		return;
     	}
     	
-    	this.model.createGraph(selectedYear);
-    	
-    	String graphInfo = this.printGraphInfo();
-    	
-    	//adjacences
-    	TreeMap<Integer, Map<Integer, Double>> districtsAdjacences = this.model.getOrderedDistrictsAdjacences();
-    	String graphAdjacences = this.printDistanceOrderedAdjacences(districtsAdjacences);
-    	
-    	this.txtResult.setText(String.format("%s\n\n%s", graphInfo, graphAdjacences));
+    	//the text is built off the FX thread too, by the operation itself: it is long on big graphs
+    	this.start(new ModelTask<>(listener -> this.asyncModel.createGraph(selectedYear, listener, model -> 
+    	{
+    		String graphInfo = this.printGraphInfo(model);
+    		
+    		//adjacences
+    		DistrictAdjacency districtsAdjacences = model.getDistrictAdjacency();
+    		String graphAdjacences = this.printDistanceOrderedAdjacences(districtsAdjacences);
+    		
+    		return String.format("%s\n\n%s", graphInfo, graphAdjacences);
+    	})), 
+    	text -> 
+    	{
+    		this.graphCreated = true;
+    		this.txtResult.setText(text);
+    	});
     }
 
-    private String printDistanceOrderedAdjacences(TreeMap<Integer, Map<Integer, Double>> districtsAdjacences)
+    private String printDistanceOrderedAdjacences(DistrictAdjacency districtsAdjacences)
 	{
 		StringBuilder sb = new StringBuilder();
 		
-		for(var districtPair : districtsAdjacences.entrySet())
+		//districts are indexed in id order, neighbours are already sorted by distance
+		for(int district=0; district<districtsAdjacences.size(); district++)
 		{
-			int district = districtPair.getKey();
-			var districtMap = districtPair.getValue();
-			
-			sb.append("Distretto ").append(district).append(":");
-			
-			List<Integer> distanceOrderedDistricts = new ArrayList<>(districtMap.keySet());
-			distanceOrderedDistricts.sort((d1, d2) -> 
-			{
-				double distance1 = districtMap.get(d1);
-				double distance2 = districtMap.get(d2);
-				
-				return Double.compare(distance1, distance2);
-			});
+			sb.append("Distretto ").append(districtsAdjacences.districtAt(district)).append(":");
 			
-			for(int adjacentDistrict : distanceOrderedDistricts)
+			for(int k=0; k<districtsAdjacences.degree(district); k++)
 			{
-				double distance = districtMap.get(adjacentDistrict);
+				int adjacentDistrict = districtsAdjacences.districtAt(districtsAdjacences.neighbour(district, k));
+				double distance = districtsAdjacences.distance(district, k);
 				
 				sb.append("\n - ").append(adjacentDistrict).append(" --> ")
 					.append(String.format("%.3f km", distance));
@@ -107,10 +123,10 @@ public class FXMLController
 		return sb.toString();
 	}
 
-	private String printGraphInfo()
+	private String printGraphInfo(Model model)
 	{
-		int numVertices = this.model.getNumVertices();
-		int numEdges = this.model.getNumEdges();
+		int numVertices = model.getNumVertices();
+		int numEdges = model.getNumEdges();
 		
 		if(numVertices == 0)
 			return "Errore: il grafo è vuoto!";
@@ -122,7 +138,7 @@ public class FXMLController
 	@FXML
     void doSimula(ActionEvent event) 
     {
-		if(!this.model.isGraphCreated())
+		if(!this.graphCreated)
 		{
 			this.txtResult.setText("Errore: creare prima il grafo");
 			return;
@@ -157,28 +173,77 @@ public class FXMLController
 			return;
 		}
 		
-		if(num < 1 || num > 10)
+		if(num < 1)
 		{
-			this.txtResult.setText("Errore: inserire un valore intero di N compreso tra 1 e 10 (inclusi)");
+			this.txtResult.setText("Errore: inserire un valore intero di N maggiore o uguale a 1");
 			return;
 		}
 		
 		LocalDate date = LocalDate.of(selectedYear.getValue(), selectedMonth, selectedDay);
 		
-		boolean ok = this.model.runSimulation(num, date);
+		this.start(new ModelTask<>(listener -> this.asyncModel.runSimulation(num, date, listener)), numOfBadManagedEvents ->
+		{
+			if(numOfBadManagedEvents == null)
+			{
+				this.txtResult.setText("Errore: non esistono eventi criminosi in data " + date + ".\nSelezionare un'altra data");
+				return;
+			}
+			
+			this.txtResult.setText(String.format(
+					"Simulazione effettuata\nData: %02d/%02d/%d\nNumero di eventi criminosi mal gestiti: %d", 
+					selectedDay, selectedMonth.getValue(), selectedYear.getValue(), numOfBadManagedEvents));
+		});
+    }
+	
+	@FXML
+    void doAnnulla(ActionEvent event) 
+	{
+		if(this.runningTask != null && !this.runningTask.cancel())
+			this.txtResult.setText("Operazione già in corso: non può più essere annullata");
+	}
+	
+	/**
+	 * Runs the task off the FX application thread, with the buttons disabled and the progress
+	 * bar bound to it; onSucceeded gets the task's value on the FX application thread
+	 */
+	private <T> void start(ModelTask<T> task, Consumer<T> onSucceeded)
+	{
+		task.setOnSucceeded(e -> 
+		{
+			this.setRunningTask(null);
+			onSucceeded.accept(task.getValue());
+		});
 		
-		if(!ok)
+		task.setOnFailed(e -> 
 		{
-			this.txtResult.setText("Errore: non esistono eventi criminosi in data " + date + ".\nSelezionare un'altra data");
-			return;
-		}
+			this.setRunningTask(null);
+			this.txtResult.setText("Errore: " + task.getException().getMessage());
+		});
 		
-		int numOfBadManagedEvents = this.model.getNumOfBadManagedEvents();
+		task.setOnCancelled(e -> 
+		{
+			this.setRunningTask(null);
+			this.txtResult.setText("Operazione annullata");
+		});
 		
-		this.txtResult.setText(String.format(
-				"Simulazione effettuata\nData: %02d/%02d/%d\nNumero di eventi criminosi mal gestiti: %d", 
-				selectedDay, selectedMonth.getValue(), selectedYear.getValue(), numOfBadManagedEvents));
-    }
+		this.setRunningTask(task);
+		this.taskExecutor.execute(task);
+	}
+	
+	private void setRunningTask(Task<?> task)
+	{
+		boolean running = task != null;
+		
+		this.runningTask = task;
+		this.btnCreaReteCittadina.setDisable(running);
+		this.btnSimula.setDisable(running);
+		this.btnAnnulla.setDisable(!running);
+		this.progressBar.setVisible(running);
+		this.progressBar.progressProperty().unbind();
+		
+		if(running)
+			this.progressBar.progressProperty().bind(task.progressProperty());
+	}
 	
 	@FXML
     void handleSelection(ActionEvent event) 
@@ -208,14 +273,19 @@ public class FXMLController
         assert btnSimula != null : "fx:id=\"btnSimula\" was not injected: check your FXML file 'Scene.fxml'.";
         assert txtN != null : "fx:id=\"txtN\" was not injected: check your FXML file 'Scene.fxml'.";
         assert txtResult != null : "fx:id=\"txtResult\" was not injected: check your FXML file 'Scene.fxml'.";
+        assert btnAnnulla != null : "fx:id=\"btnAnnulla\" was not injected: check your FXML file 'Scene.fxml'.";
+        assert progressBar != null : "fx:id=\"progressBar\" was not injected: check your FXML file 'Scene.fxml'.";
     }
     
     public void setModel(Model model) 
     {
-    	this.model = model;
+    	this.asyncModel = new AsyncModel(model);
     	
-    	List<Year> allYears = this.model.getAllYears();
-    	this.boxAnno.getItems().addAll(allYears);
+    	//the events are loaded, then years and districts are read in parallel and the graphs are
+    	//precomputed in the background: the buttons stay disabled until then
+    	this.start(new ModelTask<>(listener -> this.asyncModel.loadStartupData()), 
+    			allYears -> this.boxAnno.getItems().addAll(allYears));
+    	this.btnAnnulla.setDisable(true);	//without the events there is nothing to go back to
     	
     	int i = 1;
     	while(i <= 12)
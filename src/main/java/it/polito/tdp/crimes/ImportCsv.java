@@ -0,0 +1,34 @@
+package it.polito.tdp.crimes;
+
+import java.nio.file.Paths;
+
+import it.polito.tdp.crimes.db.CsvEventLoader;
+import it.polito.tdp.crimes.db.LoadReport;
+
+/**
+ * Loads Denver-format crime CSVs (args) into the events table, printing a report for each
+ * file. Threads and batch size with -Dcrimes.load.parsers=..., -Dcrimes.load.writers=...,
+ * -Dcrimes.load.batchSize=... (the database connection as in DBConnect)
+ */
+public class ImportCsv
+{
+	public static void main(String[] args)
+	{
+		if(args.length == 0)
+		{
+			System.err.println("Usage: ImportCsv <file.csv>...");
+			System.exit(1);
+		}
+
+		CsvEventLoader loader = new CsvEventLoader(
+				Integer.getInteger("crimes.load.parsers", Runtime.getRuntime().availableProcessors()),
+				Integer.getInteger("crimes.load.writers", 4),
+				Integer.getInteger("crimes.load.batchSize", 2000));
+
+		for(String file : args)
+		{
+			LoadReport report = loader.load(Paths.get(file));
+			System.out.println(file + ": " + report);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package it.polito.tdp.crimes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import it.polito.tdp.crimes.model.SimulationSweep.ProgressListener;
+import javafx.concurrent.Task;
+
+/**
+ * JavaFX Task over an AsyncModel operation: the operation runs on the model's executor and
+ * reports its progress to the task's progress property, while the task's thread only waits
+ * for it. Cancelling the task cancels the operation, and only succeeds if the operation does.
+ */
+class ModelTask<T> extends Task<T>
+{
+	private final Function<ProgressListener, CompletableFuture<T>> operation;
+	private volatile CompletableFuture<T> future;
+
+
+	ModelTask(Function<ProgressListener, CompletableFuture<T>> operation)
+	{
+		this.operation = operation;
+	}
+
+	@Override
+	protected T call() throws Exception
+	{
+		synchronized(this)
+		{
+			//cancelled before the operation started
+			if(this.isCancelled()) return null;
+
+			this.future = this.operation.apply(this::updateProgress);
+		}
+
+		try
+		{
+			return this.future.get();
+		}
+		catch(ExecutionException ee)
+		{
+			if(ee.getCause() instanceof Exception)
+				throw (Exception)ee.getCause();
+
+			throw ee;
+		}
+	}
+
+	/**
+	 * Cancels the operation first: if it can no longer be cancelled (see AsyncModel), neither
+	 * can the task, which returns false and completes with the operation
+	 */
+	@Override
+	public synchronized boolean cancel(boolean mayInterruptIfRunning)
+	{
+		CompletableFuture<T> future = this.future;
+
+		if(future != null && !future.cancel(false) && !future.isCancelled())
+			return false;
+
+		return super.cancel(mayInterruptIfRunning);
+	}
+}
@@ -0,0 +1,118 @@
+package it.polito.tdp.crimes;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.Arrays;
+
+import it.polito.tdp.crimes.db.DBConnect;
+import it.polito.tdp.crimes.db.EventsDao;
+
+/**
+ * Times the old function-wrapped filters (YEAR(reported_date) = ?, DATE(reported_date) = ?)
+ * against the half-open ranges EventsDao uses now, on the real database. Arguments: a date
+ * (default 2015-06-01, its year is used for the centres query), the number of repetitions
+ * (default 20) and "--create-indexes" to create the indexes first (see EventsDao.createIndexes()).
+ */
+public class QueryTiming
+{
+	private static final String CENTERS_BY_FUNCTION = "SELECT district_id, AVG(geo_lat), AVG(geo_lon), COUNT(*) "
+			+ "FROM events WHERE YEAR(reported_date) = ? GROUP BY district_id";
+	private static final String CENTERS_BY_RANGE = "SELECT district_id, AVG(geo_lat), AVG(geo_lon), COUNT(*) "
+			+ "FROM events WHERE reported_date >= ? AND reported_date < ? GROUP BY district_id";
+	private static final String DAY_BY_FUNCTION = "SELECT * FROM events WHERE DATE(reported_date) = ?";
+	private static final String DAY_BY_RANGE = "SELECT * FROM events WHERE reported_date >= ? AND reported_date < ?";
+
+
+	public static void main(String[] args)
+	{
+		LocalDate date = args.length > 0 ? LocalDate.parse(args[0]) : LocalDate.of(2015, 6, 1);
+		int repetitions = args.length > 1 ? parseRepetitions(args[1]) : 20;
+		Year year = Year.from(date);
+
+		if(repetitions < 1)
+		{
+			System.err.println("Usage: QueryTiming [date [repetitions >= 1 [--create-indexes]]]");
+			System.exit(1);
+		}
+
+		if(args.length > 2 && args[2].equals("--create-indexes"))
+		{
+			long start = System.nanoTime();
+			new EventsDao().createIndexes();
+			System.out.printf("indexes created in %.1f s%n", (System.nanoTime() - start) / 1e9);
+		}
+
+		Timestamp yearStart = Timestamp.valueOf(year.atDay(1).atStartOfDay());
+		Timestamp yearEnd = Timestamp.valueOf(year.plusYears(1).atDay(1).atStartOfDay());
+		Timestamp dayStart = Timestamp.valueOf(date.atStartOfDay());
+		Timestamp dayEnd = Timestamp.valueOf(date.plusDays(1).atStartOfDay());
+
+		print("year centres, YEAR()", time(CENTERS_BY_FUNCTION, repetitions, year.getValue()));
+		print("year centres, range", time(CENTERS_BY_RANGE, repetitions, yearStart, yearEnd));
+		print("day events, DATE()", time(DAY_BY_FUNCTION, repetitions, Date.valueOf(date)));
+		print("day events, range", time(DAY_BY_RANGE, repetitions, dayStart, dayEnd));
+	}
+
+	//0 if not a number, so that the usage is printed
+	private static int parseRepetitions(String repetitions)
+	{
+		try
+		{
+			return Integer.parseInt(repetitions);
+		}
+		catch(NumberFormatException nfe)
+		{
+			return 0;
+		}
+	}
+
+	//milliseconds of every repetition, all rows read; the first one is a warm up
+	private static double[] time(String sql, int repetitions, Object... parameters)
+	{
+		double[] millis = new double[repetitions];
+		Connection connection = DBConnect.getConnection();
+
+		try(PreparedStatement statement = connection.prepareStatement(sql))
+		{
+			for(int i=0; i<parameters.length; i++)
+				statement.setObject(i + 1, parameters[i]);
+
+			for(int r=-1; r<repetitions; r++)
+			{
+				long start = System.nanoTime();
+
+				try(ResultSet queryResult = statement.executeQuery())
+				{
+					while(queryResult.next());
+				}
+
+				if(r >= 0) millis[r] = (System.nanoTime() - start) / 1e6;
+			}
+		}
+		catch(SQLException sqle)
+		{
+			throw new RuntimeException("Error timing the query: " + sql, sqle);
+		}
+		finally
+		{
+			DBConnect.close(connection);
+		}
+
+		return millis;
+	}
+
+	private static void print(String query, double[] millis)
+	{
+		double[] sorted = millis.clone();
+		Arrays.sort(sorted);
+
+		System.out.printf("%-22s median %8.2f ms   min %8.2f ms   max %8.2f ms%n",
+				query, sorted[sorted.length / 2], sorted[0], sorted[sorted.length - 1]);
+	}
+}
@@ -0,0 +1,441 @@
+package it.polito.tdp.crimes.db;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Bulk loader of Denver-format crime CSVs into the events table. The file is read in chunks
+ * of batchSize records, which are parsed and validated in parallel (see CsvEventParser) and
+ * written by a few writer threads, each on its own pooled connection, with multi-row INSERTs
+ * committed once per chunk. Bounded queues between the three stages give back-pressure: the
+ * reader stops when the parsers are behind, the parsers when the database is.
+ * <p>
+ * Rows already in the table are left as they are (INSERT IGNORE), so loading the same dump
+ * twice is harmless. Only the columns the application reads are written.
+ */
+public class CsvEventLoader
+{
+	//rows of a single INSERT: keeps the statement far from max_allowed_packet
+	private static final int ROWS_PER_STATEMENT = 500;
+
+	//chunks waiting for each parser, batches waiting for each writer
+	private static final int QUEUED_PER_THREAD = 2;
+
+	private static final long POLL_MILLIS = 100;
+
+	//a quoted field can span lines, but a stray quote must not swallow the rest of the file
+	private static final int MAX_RECORD_LINES = 32;
+	private static final int MAX_RECORD_CHARS = 64 * 1024;
+
+	private static final String UNBALANCED_QUOTES = "unbalanced quotes";
+
+	//marks the end of the batches for a writer
+	private static final List<Event> END = Collections.emptyList();
+
+	private final int numParsers;
+	private final int numWriters;
+	private final int batchSize;
+	private final Supplier<BatchWriter> writerFactory;
+
+	//inserts batches through one connection: one per writer thread
+	interface BatchWriter extends AutoCloseable
+	{
+		/**
+		 * Inserts and commits the batch, returning the number of rows actually inserted
+		 */
+		int write(List<Event> batch) throws SQLException;
+
+		@Override
+		void close() throws SQLException;
+	}
+
+
+	/**
+	 * A parser per processor, 4 writers (the connection pool has 10) and 2000 rows per batch
+	 */
+	public CsvEventLoader()
+	{
+		this(Runtime.getRuntime().availableProcessors(), 4, 2000);
+	}
+
+	public CsvEventLoader(int numParsers, int numWriters, int batchSize)
+	{
+		this(numParsers, numWriters, batchSize, JdbcBatchWriter::new);
+	}
+
+	CsvEventLoader(int numParsers, int numWriters, int batchSize, Supplier<BatchWriter> writerFactory)
+	{
+		if(numParsers < 1 || numWriters < 1 || batchSize < 1)
+			throw new IllegalArgumentException("Error: invalid loader configuration");
+
+		this.numParsers = numParsers;
+		this.numWriters = numWriters;
+		this.batchSize = batchSize;
+		this.writerFactory = writerFactory;
+	}
+
+	/**
+	 * Loads the whole file, blocking until the last batch is committed. Rows rejected by
+	 * validation are counted in the report; I/O and database errors stop the load and are
+	 * thrown (the batches already committed stay in the table).
+	 */
+	public LoadReport load(Path csv)
+	{
+		long start = System.nanoTime();
+
+		Load load = new Load();
+		ExecutorService parsers = Executors.newFixedThreadPool(this.numParsers, threads("csv-parser"));
+		ExecutorService writers = Executors.newFixedThreadPool(this.numWriters, threads("csv-writer"));
+
+		try
+		{
+			for(int i=0; i<this.numWriters; i++)
+				writers.execute(() -> this.writeBatches(load));
+
+			this.readChunks(csv, load, parsers);
+
+			parsers.shutdown();
+			parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+			for(int i=0; i<this.numWriters; i++)
+				load.offer(END);
+
+			writers.shutdown();
+			writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch(InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			load.fail(ie);
+		}
+		finally
+		{
+			parsers.shutdownNow();
+			writers.shutdownNow();
+		}
+
+		Throwable failure = load.failure.get();
+
+		if(failure instanceof SQLException)
+			throw new RuntimeException("Dao error in load()", failure);
+		if(failure != null)
+			throw new RuntimeException("Error loading " + csv, failure);
+
+		Map<String, Long> rejectedByReason = new HashMap<>();
+		load.rejected.forEach((reason, count) -> rejectedByReason.put(reason, count.sum()));
+
+		return new LoadReport(load.rowsRead.sum(), load.rowsInserted.sum(), load.rowsIgnored.sum(),
+				rejectedByReason, System.nanoTime() - start);
+	}
+
+	private void readChunks(Path csv, Load load, ExecutorService parsers) throws InterruptedException
+	{
+		Semaphore chunksInFlight = new Semaphore(this.numParsers * QUEUED_PER_THREAD);
+
+		try(BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8))
+		{
+			String header = reader.readLine();
+			if(header == null)
+				throw new IllegalArgumentException("Error: " + csv + " is empty");
+
+			CsvEventParser parser = new CsvEventParser(header.replace("\uFEFF", ""));	//without the byte order mark
+
+			List<String> chunk = new ArrayList<>(this.batchSize);
+			StringBuilder record = new StringBuilder();
+			int recordLines = 0;
+			String line;
+
+			while((line = reader.readLine()) != null && !load.hasFailed())
+			{
+				//a quoted field can span lines, up to a limit
+				if(record.length() > 0) record.append('\n');
+				record.append(line);
+				recordLines++;
+
+				if(!CsvEventParser.isComplete(record))
+				{
+					if(recordLines < MAX_RECORD_LINES && record.length() < MAX_RECORD_CHARS) continue;
+
+					load.rowsRead.increment();
+					load.reject(UNBALANCED_QUOTES);
+					record.setLength(0);
+					recordLines = 0;
+					continue;
+				}
+
+				if(!line.isBlank())
+					chunk.add(record.toString());
+				record.setLength(0);
+				recordLines = 0;
+
+				if(chunk.size() == this.batchSize)
+				{
+					this.submit(chunk, parser, load, parsers, chunksInFlight);
+					chunk = new ArrayList<>(this.batchSize);
+				}
+			}
+
+			if(record.length() > 0)
+			{
+				load.rowsRead.increment();
+				load.reject(UNBALANCED_QUOTES);
+			}
+
+			if(!chunk.isEmpty())
+				this.submit(chunk, parser, load, parsers, chunksInFlight);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			load.fail(e);
+		}
+	}
+
+	private void submit(List<String> chunk, CsvEventParser parser, Load load, ExecutorService parsers,
+			Semaphore chunksInFlight) throws InterruptedException
+	{
+		chunksInFlight.acquire();
+
+		parsers.execute(() ->
+		{
+			try
+			{
+				List<Event> batch = new ArrayList<>(chunk.size());
+
+				for(String record : chunk)
+				{
+					try
+					{
+						batch.add(parser.parse(record));
+					}
+					catch(CsvEventParser.RejectedRowException rre)
+					{
+						load.reject(rre.getMessage());
+					}
+				}
+
+				load.rowsRead.add(chunk.size());
+
+				if(!batch.isEmpty())
+					load.offer(batch);
+			}
+			catch(InterruptedException | RuntimeException e)
+			{
+				load.fail(e);
+			}
+			finally
+			{
+				chunksInFlight.release();
+			}
+		});
+	}
+
+	private void writeBatches(Load load)
+	{
+		try(BatchWriter writer = this.writerFactory.get())
+		{
+			while(true)
+			{
+				List<Event> batch = load.batches.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+				if(batch == END || load.hasFailed()) return;
+				if(batch == null) continue;
+
+				int inserted = writer.write(batch);
+				load.rowsInserted.add(inserted);
+				load.rowsIgnored.add(batch.size() - inserted);
+			}
+		}
+		catch(SQLException | InterruptedException | RuntimeException e)
+		{
+			load.fail(e);
+		}
+	}
+
+	private static ThreadFactory threads(String name)
+	{
+		AtomicInteger count = new AtomicInteger();
+
+		return task ->
+		{
+			Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	//state shared by the stages of a load
+	private class Load
+	{
+		final BlockingQueue<List<Event>> batches = new ArrayBlockingQueue<>(numWriters * QUEUED_PER_THREAD);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final LongAdder rowsRead = new LongAdder();
+		final LongAdder rowsInserted = new LongAdder();
+		final LongAdder rowsIgnored = new LongAdder();
+		final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+
+		void reject(String reason)
+		{
+			this.rejected.computeIfAbsent(reason, r -> new LongAdder()).increment();
+		}
+
+		boolean hasFailed()
+		{
+			return this.failure.get() != null;
+		}
+
+		void fail(Throwable t)
+		{
+			this.failure.compareAndSet(null, t);
+		}
+
+		//blocks while the writers are behind, unless the load has failed (nobody would take the batch)
+		void offer(List<Event> batch) throws InterruptedException
+		{
+			while(!this.hasFailed())
+			{
+				if(this.batches.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS))
+					return;
+			}
+		}
+	}
+
+	private static class JdbcBatchWriter implements BatchWriter
+	{
+		private final Connection connection;
+		private final PreparedStatement fullStatement;
+
+
+		JdbcBatchWriter()
+		{
+			this.connection = DBConnect.getConnection();
+
+			try
+			{
+				this.connection.setAutoCommit(false);
+				this.fullStatement = this.connection.prepareStatement(insertSql(ROWS_PER_STATEMENT));
+			}
+			catch(SQLException sqle)
+			{
+				DBConnect.close(this.connection);
+				throw new RuntimeException("Dao error in load()", sqle);
+			}
+		}
+
+		@Override
+		public int write(List<Event> batch) throws SQLException
+		{
+			int inserted = 0;
+
+			try
+			{
+				for(int from=0; from<batch.size(); from+=ROWS_PER_STATEMENT)
+				{
+					int rows = Math.min(ROWS_PER_STATEMENT, batch.size() - from);
+
+					if(rows == ROWS_PER_STATEMENT)
+						inserted += execute(this.fullStatement, batch, from, rows);
+					else
+					{
+						try(PreparedStatement statement = this.connection.prepareStatement(insertSql(rows)))
+						{
+							inserted += execute(statement, batch, from, rows);
+						}
+					}
+				}
+
+				this.connection.commit();
+			}
+			catch(SQLException sqle)
+			{
+				this.connection.rollback();
+				throw sqle;
+			}
+
+			return inserted;
+		}
+
+		@Override
+		public void close() throws SQLException
+		{
+			try
+			{
+				this.connection.setAutoCommit(true);
+			}
+			finally
+			{
+				DBConnect.close(this.fullStatement, this.connection);
+			}
+		}
+
+		private static int execute(PreparedStatement statement, List<Event> batch, int from, int rows) throws SQLException
+		{
+			int p = 1;
+
+			for(int i=from; i<from+rows; i++)
+			{
+				Event event = batch.get(i);
+
+				statement.setLong(p++, event.getIncident_id());
+				statement.setInt(p++, event.getOffense_code());
+				statement.setInt(p++, event.getOffense_code_extension());
+				statement.setString(p++, event.getOffense_type_id());
+				statement.setString(p++, event.getOffense_category_id());
+				statement.setTimestamp(p++, Timestamp.valueOf(event.getReported_date()));
+				statement.setString(p++, event.getIncident_address());
+				statement.setDouble(p++, event.getGeo_lon());
+				statement.setDouble(p++, event.getGeo_lat());
+				statement.setInt(p++, event.getDistrict_id());
+				setInteger(statement, p++, event.getPrecinct_id());
+				statement.setString(p++, event.getNeighborhood_id());
+				statement.setInt(p++, event.getIs_crime());
+				statement.setInt(p++, event.getIs_traffic());
+			}
+
+			return statement.executeUpdate();
+		}
+
+		private static void setInteger(PreparedStatement statement, int parameter, Integer value) throws SQLException
+		{
+			if(value == null)
+				statement.setNull(parameter, Types.INTEGER);
+			else
+				statement.setInt(parameter, value);
+		}
+	}
+
+	//INSERT IGNORE INTO events (...) VALUES (?, ...), ..., one group per row
+	static String insertSql(int rows)
+	{
+		String row = "(" + String.join(", ", Collections.nCopies(CsvEventParser.COLUMNS.length, "?")) + ")";
+
+		return "INSERT IGNORE INTO events (" + String.join(", ", CsvEventParser.COLUMNS) + ") VALUES "
+				+ String.join(", ", Collections.nCopies(rows, row));
+	}
+}
@@ -0,0 +1,252 @@
+package it.polito.tdp.crimes.db;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Turns the records of a Denver-format crime CSV into Events: columns are found by header
+ * name (case insensitive, in any order, extra ones ignored), values are trimmed, the ids
+ * lower-cased and empty strings are nulls. A record that does not fit the events table
+ * throws RejectedRowException with the reason. Stateless after construction, so it can be
+ * shared by the parsing threads.
+ */
+class CsvEventParser
+{
+	//the columns of the events table the application reads, as named in the CSV header
+	static final String[] COLUMNS = {"incident_id", "offense_code", "offense_code_extension",
+			"offense_type_id", "offense_category_id", "reported_date", "incident_address", "geo_lon",
+			"geo_lat", "district_id", "precinct_id", "neighborhood_id", "is_crime", "is_traffic"};
+
+	//the open data portal exports "1/2/2016 12:31:00 AM", database dumps "2016-01-02 00:31:00"
+	private static final DateTimeFormatter PORTAL_DATE = new DateTimeFormatterBuilder().parseCaseInsensitive()
+			.appendPattern("M/d/yyyy h:mm:ss a").toFormatter(Locale.US);
+	private static final DateTimeFormatter DUMP_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final int[] indexes;	//position of every one of COLUMNS in a record
+
+	//without a stack trace: bad rows are expected, and thrown often in a bad dump
+	static class RejectedRowException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		RejectedRowException(String reason)
+		{
+			super(reason, null, false, false);
+		}
+	}
+
+
+	/**
+	 * Throws IllegalArgumentException if a required column is missing from the header
+	 */
+	CsvEventParser(String header)
+	{
+		List<String> names = split(header);
+		Map<String, Integer> positions = new HashMap<>();
+
+		for(int i=0; i<names.size(); i++)
+			positions.putIfAbsent(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+
+		this.indexes = new int[COLUMNS.length];
+
+		for(int c=0; c<COLUMNS.length; c++)
+		{
+			Integer position = positions.get(COLUMNS[c]);
+			if(position == null)
+				throw new IllegalArgumentException("Error: column " + COLUMNS[c] + " missing from the CSV header");
+
+			this.indexes[c] = position;
+		}
+	}
+
+	Event parse(String record)
+	{
+		List<String> fields = split(record);
+		if(fields.size() <= this.maxIndex())
+			throw new RejectedRowException("too few fields");
+
+		String[] values = new String[COLUMNS.length];
+		for(int c=0; c<COLUMNS.length; c++)
+		{
+			String value = fields.get(this.indexes[c]).trim();
+			values[c] = value.isEmpty() ? null : value;
+		}
+
+		double lon = parseDouble(values[7], "geo_lon");
+		double lat = parseDouble(values[8], "geo_lat");
+
+		if(Double.isNaN(lon) || Double.isNaN(lat))
+			throw new RejectedRowException("no coordinates");
+		if(lat < -90.0 || lat > 90.0 || lon < -180.0 || lon > 180.0)
+			throw new RejectedRowException("coordinates out of range");
+
+		return new Event(parseLong(required(values[0], "incident_id")),
+				parseInt(required(values[1], "offense_code"), "offense_code"),
+				parseInt(required(values[2], "offense_code_extension"), "offense_code_extension"),
+				lowerCase(required(values[3], "offense_type_id")),
+				lowerCase(required(values[4], "offense_category_id")),
+				parseDate(required(values[5], "reported_date")),
+				values[6],
+				lon,
+				lat,
+				parseInt(required(values[9], "district_id"), "district_id"),
+				values[10] == null ? null : parseInt(values[10], "precinct_id"),
+				lowerCase(values[11]),
+				parseFlag(values[12], "is_crime"),
+				parseFlag(values[13], "is_traffic"));
+	}
+
+	private int maxIndex()
+	{
+		int max = 0;
+
+		for(int index : this.indexes)
+			max = Math.max(max, index);
+
+		return max;
+	}
+
+	/**
+	 * The fields of a record: separated by commas, optionally quoted, with "" for a quote
+	 * inside a quoted field (RFC 4180)
+	 */
+	static List<String> split(String record)
+	{
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for(int i=0; i<record.length(); i++)
+		{
+			char c = record.charAt(i);
+
+			if(quoted)
+			{
+				if(c != '"')
+					field.append(c);
+				else if(i + 1 < record.length() && record.charAt(i + 1) == '"')
+					field.append(record.charAt(++i));
+				else
+					quoted = false;
+			}
+			else if(c == '"')
+				quoted = true;
+			else if(c == ',')
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+				field.append(c);
+		}
+
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * True if the quotes of the text are balanced, i.e. a record read line by line is complete
+	 */
+	static boolean isComplete(CharSequence text)
+	{
+		boolean quoted = false;
+
+		for(int i=0; i<text.length(); i++)
+			if(text.charAt(i) == '"') quoted = !quoted;
+
+		return !quoted;
+	}
+
+	private static String required(String value, String column)
+	{
+		if(value == null)
+			throw new RejectedRowException("no " + column);
+
+		return value;
+	}
+
+	private static String lowerCase(String value)
+	{
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+
+	//some exports write the integer columns as floating point numbers ("2016376978.0")
+	private static String integerPart(String value)
+	{
+		return value.endsWith(".0") ? value.substring(0, value.length() - 2) : value;
+	}
+
+	private static long parseLong(String value)
+	{
+		try
+		{
+			return Long.parseLong(integerPart(value));
+		}
+		catch(NumberFormatException nfe)
+		{
+			throw new RejectedRowException("invalid incident_id");
+		}
+	}
+
+	private static int parseInt(String value, String column)
+	{
+		try
+		{
+			return Integer.parseInt(integerPart(value));
+		}
+		catch(NumberFormatException nfe)
+		{
+			throw new RejectedRowException("invalid " + column);
+		}
+	}
+
+	private static int parseFlag(String value, String column)
+	{
+		int flag = parseInt(required(value, column), column);
+
+		if(flag != 0 && flag != 1)
+			throw new RejectedRowException("invalid " + column);
+
+		return flag;
+	}
+
+	//NaN if missing
+	private static double parseDouble(String value, String column)
+	{
+		if(value == null) return Double.NaN;
+
+		try
+		{
+			return Double.parseDouble(value);
+		}
+		catch(NumberFormatException nfe)
+		{
+			throw new RejectedRowException("invalid " + column);
+		}
+	}
+
+	//the format is told by the separators, not by trying them (a failed parse is an exception)
+	private static LocalDateTime parseDate(String value)
+	{
+		DateTimeFormatter format = value.indexOf('/') >= 0 ? PORTAL_DATE
+				: value.indexOf('T') >= 0 ? DateTimeFormatter.ISO_LOCAL_DATE_TIME : DUMP_DATE;
+
+		try
+		{
+			return LocalDateTime.parse(value, format);
+		}
+		catch(DateTimeParseException dtpe)
+		{
+			throw new RejectedRowException("invalid reported_date");
+		}
+	}
+}
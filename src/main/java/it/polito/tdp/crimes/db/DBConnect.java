@@ -9,18 +9,22 @@ import com.zaxxer.hikari.HikariDataSource;
 
 public class DBConnect 
 {
-	private static final String jdbcURL = "jdbc:mariadb://localhost/denver_crimes";
+	//overridable with -Dcrimes.db.url=... -Dcrimes.db.user=... -Dcrimes.db.password=...
+	private static final String jdbcURL = System.getProperty("crimes.db.url", "jdbc:mariadb://localhost/denver_crimes");
+	private static final String username = System.getProperty("crimes.db.user", "root");
+	private static final String password = System.getProperty("crimes.db.password", "root");
 	private static HikariDataSource ds;
 	
 	
-	public static Connection getConnection() 
-	{	
+	//synchronized: the pool is created once, even when the first connections are asked in parallel
+	private static synchronized HikariDataSource getDataSource()
+	{
 		if (ds == null) 
 		{
 			HikariConfig config = new HikariConfig();
 			config.setJdbcUrl(jdbcURL);
-			config.setUsername("root");
-			config.setPassword("root");
+			config.setUsername(username);
+			config.setPassword(password);
 			
 			// configurazione MySQL
 			config.addDataSourceProperty("cachePrepStmts", "true");
@@ -30,9 +34,14 @@ public class DBConnect
 			ds = new HikariDataSource(config);
 		}
 		
+		return ds;
+	}
+	
+	public static Connection getConnection() 
+	{	
 		try 
 		{	
-			return ds.getConnection();
+			return getDataSource().getConnection();
 		} 
 		catch (SQLException e) 
 		{
@@ -0,0 +1,32 @@
+package it.polito.tdp.crimes.db;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Forward-only, time-ordered iterator over crime events that holds
+ * the underlying resources until it is closed
+ */
+public interface EventCursor extends Iterator<Event>, AutoCloseable
+{
+	@Override
+	void close();
+	
+	/**
+	 * The remaining events as a sequential, lazy stream that closes this cursor when it is
+	 * closed: use it in a try-with-resources, so that the cursor is released even if the
+	 * stream is not consumed to the end
+	 */
+	default Stream<Event> stream()
+	{
+		Spliterator<Event> events = Spliterators.spliteratorUnknownSize(this, 
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		
+		return StreamSupport.stream(events, false).onClose(this::close);
+	}
+}
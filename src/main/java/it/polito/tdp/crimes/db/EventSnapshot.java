@@ -0,0 +1,337 @@
+package it.polito.tdp.crimes.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.SymbolTable;
+
+/**
+ * Binary snapshot of an EventStore, read through a memory mapping: the columns and indexes
+ * of the opened store are views over the mapped file, so opening it costs a header check, a
+ * pass over the indexes to validate them and the (small) string dictionaries. The dictionaries are those of
+ * Event's symbol tables when the snapshot was written: on opening, their strings are added to
+ * the tables, and the category and neighbourhood columns are copied with the tables' codes only
+ * if these differ (the tables had already seen other strings first).
+ * <p>
+ * Layout, little endian: the long and double sections start 8-byte aligned, the int sections
+ * follow them back to back and are padded to 8 bytes as a whole, before the strings:
+ * <pre>
+ * header      magic, version, rows, days, first epoch day, districts, district rows,
+ *             categories, neighbourhoods
+ * longs       epoch seconds, incident ids                 [rows each]
+ * doubles     latitudes, longitudes                       [rows each]
+ * ints        district ids, categories, neighbourhoods    [rows each]
+ *             day offsets [days + 1], district keys [districts],
+ *             district offsets [districts + 1], district rows [district rows]
+ * strings     categories, then neighbourhoods: UTF-8 length (int) and bytes
+ * </pre>
+ */
+class EventSnapshot
+{
+	private static final int MAGIC = 0x43524D53;	//"CRMS"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 40;
+
+	private EventSnapshot()
+	{
+	}
+
+	static void write(EventStore store, Path file)
+	{
+		int n = store.size;
+		int numDays = store.dayOffsets.limit() - 1;
+		int numDistricts = store.districtKeys.limit();
+		int numDistrictRows = store.districtRows.limit();
+
+		byte[][] categories = encode(Event.OFFENSE_CATEGORIES);
+		byte[][] neighborhoods = encode(Event.NEIGHBORHOODS);
+
+		long bytes = columnBytes(n, numDays, numDistricts, numDistrictRows)
+				+ stringBytes(categories) + stringBytes(neighborhoods);
+
+		if(bytes > Integer.MAX_VALUE)
+			throw new RuntimeException("Error: too many events for a single snapshot");
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(numDays).putLong(store.firstDay)
+				  .putInt(numDistricts).putInt(numDistrictRows).putInt(categories.length).putInt(neighborhoods.length);
+
+			putLongs(buffer, store.epochSeconds);
+			putLongs(buffer, store.incidentIds);
+			putDoubles(buffer, store.latitudes);
+			putDoubles(buffer, store.longitudes);
+
+			putInts(buffer, store.districtIds);
+			putInts(buffer, store.categories);
+			putInts(buffer, store.neighborhoods);
+			putInts(buffer, store.dayOffsets);
+			putInts(buffer, store.districtKeys);
+			putInts(buffer, store.districtOffsets);
+			putInts(buffer, store.districtRows);
+			buffer.position((int)align(buffer.position()));
+
+			putStrings(buffer, categories);
+			putStrings(buffer, neighborhoods);
+			buffer.force();
+		}
+		catch(IOException ioe)
+		{
+			throw new RuntimeException("Error writing the events snapshot " + file, ioe);
+		}
+
+		try
+		{
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException ioe)
+		{
+			throw new RuntimeException("Error writing the events snapshot " + file, ioe);
+		}
+	}
+
+	static EventStore open(Path file)
+	{
+		MappedByteBuffer mapping;
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			if(channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE)
+				throw new RuntimeException("Error: " + file + " is not an events snapshot");
+
+			//the mapping stays valid after the channel is closed
+			mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		catch(IOException ioe)
+		{
+			throw new RuntimeException("Error opening the events snapshot " + file, ioe);
+		}
+
+		ByteBuffer buffer = mapping.order(ByteOrder.LITTLE_ENDIAN);
+
+		if(buffer.getInt() != MAGIC)
+			throw new RuntimeException("Error: " + file + " is not an events snapshot");
+
+		int version = buffer.getInt();
+		if(version != VERSION)
+			throw new RuntimeException("Error: unsupported events snapshot version " + version + " in " + file);
+
+		int n = buffer.getInt();
+		int numDays = buffer.getInt();
+		long firstDay = buffer.getLong();
+		int numDistricts = buffer.getInt();
+		int numDistrictRows = buffer.getInt();
+		int numCategories = buffer.getInt();
+		int numNeighborhoods = buffer.getInt();
+
+		if(n < 0 || numDays < 0 || numDistricts < 0 || numDistrictRows < 0 || numCategories < 0 || numNeighborhoods < 0 ||
+				columnBytes(n, numDays, numDistricts, numDistrictRows) > buffer.capacity())
+			throw new RuntimeException("Error: the events snapshot " + file + " is truncated or corrupted");
+
+		LongBuffer epochSeconds = slice(buffer, n * Long.BYTES).asLongBuffer();
+		LongBuffer incidentIds = slice(buffer, n * Long.BYTES).asLongBuffer();
+		DoubleBuffer latitudes = slice(buffer, n * Double.BYTES).asDoubleBuffer();
+		DoubleBuffer longitudes = slice(buffer, n * Double.BYTES).asDoubleBuffer();
+
+		IntBuffer districtIds = ints(buffer, n);
+		IntBuffer categories = ints(buffer, n);
+		IntBuffer neighborhoods = ints(buffer, n);
+		IntBuffer dayOffsets = ints(buffer, numDays + 1);
+		IntBuffer districtKeys = ints(buffer, numDistricts);
+		IntBuffer districtOffsets = ints(buffer, numDistricts + 1);
+		IntBuffer districtRows = ints(buffer, numDistrictRows);
+		buffer.position((int)align(buffer.position()));
+
+		//the slices trust the indexes: a damaged one must fail here, not in a later query
+		if(!isOffsets(dayOffsets, n) || !isOffsets(districtOffsets, numDistrictRows)
+				|| !isIncreasing(districtKeys) || !isInRange(districtRows, n))
+			throw new RuntimeException("Error: the events snapshot " + file + " is truncated or corrupted");
+
+		String[] categoryNames = getStrings(buffer, numCategories, file);
+		String[] neighborhoodNames = getStrings(buffer, numNeighborhoods, file);
+
+		categories = recode(categories, categoryNames, Event.OFFENSE_CATEGORIES, file);
+		neighborhoods = recode(neighborhoods, neighborhoodNames, Event.NEIGHBORHOODS, file);
+
+		return new EventStore(n, epochSeconds, districtIds, categories, neighborhoods, latitudes, longitudes,
+				incidentIds, firstDay, dayOffsets, districtKeys, districtOffsets, districtRows);
+	}
+
+	//the next 'bytes' bytes of the buffer, as a little endian buffer of their own
+	private static ByteBuffer slice(ByteBuffer buffer, int bytes)
+	{
+		ByteBuffer section = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		section.limit(bytes);
+		buffer.position(buffer.position() + bytes);
+		return section;
+	}
+
+	private static IntBuffer ints(ByteBuffer buffer, int count)
+	{
+		return slice(buffer, count * Integer.BYTES).asIntBuffer();
+	}
+
+	//bulk copies through views, which share the buffer's byte order; the source buffers are not moved
+	private static void putLongs(ByteBuffer buffer, LongBuffer values)
+	{
+		buffer.asLongBuffer().put(values.duplicate());
+		buffer.position(buffer.position() + values.limit() * Long.BYTES);
+	}
+
+	private static void putDoubles(ByteBuffer buffer, DoubleBuffer values)
+	{
+		buffer.asDoubleBuffer().put(values.duplicate());
+		buffer.position(buffer.position() + values.limit() * Double.BYTES);
+	}
+
+	private static void putInts(ByteBuffer buffer, IntBuffer values)
+	{
+		buffer.asIntBuffer().put(values.duplicate());
+		buffer.position(buffer.position() + values.limit() * Integer.BYTES);
+	}
+
+	//non-decreasing, from 0 to last
+	private static boolean isOffsets(IntBuffer offsets, int last)
+	{
+		if(offsets.get(0) != 0 || offsets.get(offsets.limit() - 1) != last)
+			return false;
+
+		for(int i=1; i<offsets.limit(); i++)
+		{
+			if(offsets.get(i) < offsets.get(i - 1))
+				return false;
+		}
+
+		return true;
+	}
+
+	private static boolean isIncreasing(IntBuffer values)
+	{
+		for(int i=1; i<values.limit(); i++)
+		{
+			if(values.get(i) <= values.get(i - 1))
+				return false;
+		}
+
+		return true;
+	}
+
+	//every value in [0, n)
+	private static boolean isInRange(IntBuffer values, int n)
+	{
+		for(int i=0; i<values.limit(); i++)
+		{
+			if(values.get(i) < 0 || values.get(i) >= n)
+				return false;
+		}
+
+		return true;
+	}
+
+	//everything but the strings
+	private static long columnBytes(int n, int numDays, int numDistricts, int numDistrictRows)
+	{
+		return HEADER_BYTES + 4L * Long.BYTES * n
+				+ align(Integer.BYTES * (3L * n + numDays + 1 + 2L * numDistricts + 1 + numDistrictRows));
+	}
+
+	//every symbol of the table, in code order
+	private static byte[][] encode(SymbolTable table)
+	{
+		byte[][] encoded = new byte[table.size()][];
+
+		for(int code=0; code<encoded.length; code++)
+			encoded[code] = table.symbolOf(code).getBytes(StandardCharsets.UTF_8);
+
+		return encoded;
+	}
+
+	//the column with the codes of the table instead of those of the file's names
+	private static IntBuffer recode(IntBuffer codes, String[] names, SymbolTable table, Path file)
+	{
+		int[] tableCodes = new int[names.length];
+		boolean same = true;
+
+		for(int code=0; code<names.length; code++)
+		{
+			tableCodes[code] = table.codeOf(names[code]);
+			same &= tableCodes[code] == code;
+		}
+
+		if(same) return codes;
+
+		int[] recoded = new int[codes.limit()];
+
+		for(int row=0; row<recoded.length; row++)
+		{
+			int code = codes.get(row);
+
+			if(code == SymbolTable.NO_SYMBOL)
+				recoded[row] = code;
+			else if(code >= 0 && code < tableCodes.length)
+				recoded[row] = tableCodes[code];
+			else
+				throw new RuntimeException("Error: the events snapshot " + file + " is truncated or corrupted");
+		}
+
+		return IntBuffer.wrap(recoded);
+	}
+
+	private static long stringBytes(byte[][] strings)
+	{
+		long bytes = 0;
+
+		for(byte[] string : strings)
+			bytes += Integer.BYTES + string.length;
+
+		return bytes;
+	}
+
+	private static void putStrings(ByteBuffer buffer, byte[][] strings)
+	{
+		for(byte[] string : strings)
+			buffer.putInt(string.length).put(string);
+	}
+
+	//every length is checked against what is left, so a damaged file cannot overrun the mapping
+	private static String[] getStrings(ByteBuffer buffer, int count, Path file)
+	{
+		String[] strings = new String[count];
+
+		for(int i=0; i<count; i++)
+		{
+			int length = buffer.remaining() < Integer.BYTES ? -1 : buffer.getInt();
+			if(length < 0 || length > buffer.remaining())
+				throw new RuntimeException("Error: the events snapshot " + file + " is truncated or corrupted");
+
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		return strings;
+	}
+
+	private static long align(long bytes)
+	{
+		return (bytes + 7) & ~7L;
+	}
+}
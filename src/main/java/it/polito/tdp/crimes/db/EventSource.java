@@ -0,0 +1,75 @@
+package it.polito.tdp.crimes.db;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Source of the crime events read by the Model: the denver_crimes database
+ * (EventsDao) or a synthetic generator (SyntheticEventSource)
+ */
+public interface EventSource
+{
+	List<Year> getAllYears();
+
+	Collection<Integer> getAllDistrictIDs();
+
+	/**
+	 * Average coordinates of the crimes of the given year by district; the number of
+	 * crimes of each district is put into numOfCrimesByDistrict
+	 */
+	Map<Integer, LatLng> getGeographicCenters(Year selectedYear, Map<Integer, Integer> numOfCrimesByDistrict);
+
+	Collection<Event> getCrimeEventsOn(LocalDate date);
+
+	/**
+	 * The crime events of the days in [fromDate, toDate), grouped by day: every day of the
+	 * range is a key, in order, possibly with no events. Sources should fetch all the range
+	 * at once; this default asks for one day at a time.
+	 */
+	default Map<LocalDate, List<Event>> getCrimeEventsBetween(LocalDate fromDate, LocalDate toDate)
+	{
+		Map<LocalDate, List<Event>> eventsByDay = emptyDays(fromDate, toDate);
+
+		for(var day : eventsByDay.entrySet())
+			day.getValue().addAll(this.getCrimeEventsOn(day.getKey()));
+
+		return eventsByDay;
+	}
+
+	/**
+	 * An ordered map with an empty list for every day in [fromDate, toDate)
+	 */
+	static Map<LocalDate, List<Event>> emptyDays(LocalDate fromDate, LocalDate toDate)
+	{
+		Map<LocalDate, List<Event>> eventsByDay = new LinkedHashMap<>();
+
+		for(LocalDate day = fromDate; day.isBefore(toDate); day = day.plusDays(1))
+			eventsByDay.put(day, new ArrayList<>());
+
+		return eventsByDay;
+	}
+
+	/**
+	 * Time ordered cursor over the crime events reported in [from, to)
+	 */
+	EventCursor openCrimeEventsCursor(LocalDateTime from, LocalDateTime to);
+
+	/**
+	 * A source that also returns the given crimes, reported after this one was opened. This
+	 * default returns the source itself: sources reading the table see the crimes appended to it.
+	 */
+	default EventSource withCrimeEvents(Collection<Event> newEvents)
+	{
+		return this;
+	}
+}
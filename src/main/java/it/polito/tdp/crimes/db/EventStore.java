@@ -0,0 +1,546 @@
+package it.polito.tdp.crimes.db;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.SymbolTable;
+
+/**
+ * Columnar copy of all the crime events of another EventSource (the database), loaded once:
+ * every column the simulation and the analytics need is a primitive buffer in time order
+ * (categories and neighbourhoods are codes of Event's shared symbol tables, so they are never
+ * translated), indexed by day and by district.
+ * The buffers are on the heap when the store is loaded from a source, or map a snapshot file
+ * (see EventSnapshot), so a store can be opened without reading the events one by one.
+ * Days, date ranges and districts come back as slices: views over the columns that copy nothing
+ * and create an Event only when one is asked for. Not modified after loading, so thread safe:
+ * withCrimeEvents() returns a new store.
+ */
+public class EventStore implements EventSource
+{
+	public static final int NO_DISTRICT = Integer.MIN_VALUE;
+	public static final int NO_CODE = SymbolTable.NO_SYMBOL;
+
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	//columns, one row per event, sorted by time
+	final int size;
+	final LongBuffer epochSeconds;		//UTC, as in the Simulator
+	final IntBuffer districtIds;		//NO_DISTRICT if null
+	final IntBuffer categories;			//codes of Event.OFFENSE_CATEGORIES, NO_CODE if null
+	final IntBuffer neighborhoods;		//codes of Event.NEIGHBORHOODS, NO_CODE if null
+	final DoubleBuffer latitudes;
+	final DoubleBuffer longitudes;
+	final LongBuffer incidentIds;
+
+	//day index: the rows of day firstDay+d are [dayOffsets[d], dayOffsets[d+1])
+	final long firstDay;				//epoch day
+	final IntBuffer dayOffsets;
+
+	//district index: the rows of district districtKeys[k] are districtRows[districtOffsets[k] .. districtOffsets[k+1]), in time order
+	final IntBuffer districtKeys;		//sorted
+	final IntBuffer districtOffsets;
+	final IntBuffer districtRows;
+
+
+	EventStore(int size, LongBuffer epochSeconds, IntBuffer districtIds, IntBuffer categories, IntBuffer neighborhoods,
+			DoubleBuffer latitudes, DoubleBuffer longitudes, LongBuffer incidentIds, long firstDay,
+			IntBuffer dayOffsets, IntBuffer districtKeys, IntBuffer districtOffsets, IntBuffer districtRows)
+	{
+		this.size = size;
+		this.epochSeconds = epochSeconds;
+		this.districtIds = districtIds;
+		this.categories = categories;
+		this.neighborhoods = neighborhoods;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.incidentIds = incidentIds;
+
+		this.firstDay = firstDay;
+		this.dayOffsets = dayOffsets;
+		this.districtKeys = districtKeys;
+		this.districtOffsets = districtOffsets;
+		this.districtRows = districtRows;
+	}
+
+	/**
+	 * Reads all the events of the source's years through one time ordered cursor
+	 */
+	public static EventStore load(EventSource source)
+	{
+		List<Year> years = source.getAllYears();
+		Columns columns = new Columns();
+
+		if(!years.isEmpty())
+		{
+			LocalDateTime from = years.get(0).atDay(1).atStartOfDay();
+			LocalDateTime to = years.get(years.size() - 1).plusYears(1).atDay(1).atStartOfDay();
+
+			try(EventCursor events = source.openCrimeEventsCursor(from, to))
+			{
+				while(events.hasNext())
+					columns.add(events.next());
+			}
+		}
+
+		return columns.toStore();
+	}
+
+	/**
+	 * Maps a snapshot written by writeSnapshot(): nothing is read until it is used
+	 */
+	public static EventStore openSnapshot(Path file)
+	{
+		return EventSnapshot.open(file);
+	}
+
+	/**
+	 * Writes the store into a snapshot file, which replaces the given one only once complete
+	 */
+	public void writeSnapshot(Path file)
+	{
+		EventSnapshot.write(this, file);
+	}
+
+	/**
+	 * A new store with the rows of this one and the given crimes, merged in time order (crimes
+	 * without a reported date are skipped). The columns are copied, so crimes are better added
+	 * in batches than one at a time.
+	 */
+	@Override
+	public EventStore withCrimeEvents(Collection<Event> newEvents)
+	{
+		List<Event> sorted = new ArrayList<>();
+		for(Event event : newEvents)
+		{
+			if(event.getReported_date() != null)
+				sorted.add(event);
+		}
+		sorted.sort(Comparator.comparingLong(Event::getEpochSecond));
+
+		Columns columns = new Columns(this.size + sorted.size());
+		int next = 0;
+
+		for(int row=0; row<this.size; row++)
+		{
+			while(next < sorted.size() && sorted.get(next).getEpochSecond() < this.epochSeconds.get(row))
+				columns.add(sorted.get(next++));
+
+			columns.add(this, row);
+		}
+		while(next < sorted.size())
+			columns.add(sorted.get(next++));
+
+		return columns.toStore();
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * All the events of the given day
+	 */
+	public Slice eventsOn(LocalDate date)
+	{
+		return this.eventsBetween(date, date.plusDays(1));
+	}
+
+	/**
+	 * All the events of the days in [fromDate, toDate)
+	 */
+	public Slice eventsBetween(LocalDate fromDate, LocalDate toDate)
+	{
+		return new Slice(null, this.dayRow(fromDate), Math.max(this.dayRow(fromDate), this.dayRow(toDate)));
+	}
+
+	/**
+	 * The events of the given district in the days [fromDate, toDate)
+	 */
+	public Slice eventsOf(int districtId, LocalDate fromDate, LocalDate toDate)
+	{
+		int k = this.districtIndex(districtId);
+		if(k < 0) return new Slice(null, 0, 0);
+
+		int fromRow = this.dayRow(fromDate);
+		int toRow = Math.max(fromRow, this.dayRow(toDate));
+
+		//district rows are sorted, so the ones of the period are a range too
+		int from = lowerBound(this.districtRows, this.districtOffsets.get(k), this.districtOffsets.get(k + 1), fromRow);
+		int to = lowerBound(this.districtRows, from, this.districtOffsets.get(k + 1), toRow);
+
+		return new Slice(this.districtRows, from, to);
+	}
+
+	//first row of the given day (or of the next one with events)
+	private int dayRow(LocalDate date)
+	{
+		long day = date.toEpochDay() - this.firstDay;
+
+		if(day <= 0) return 0;
+		if(day >= this.dayOffsets.limit()) return this.size;
+
+		return this.dayOffsets.get((int)day);
+	}
+
+	//index of the district in districtKeys, or -1
+	private int districtIndex(int districtId)
+	{
+		int k = lowerBound(this.districtKeys, 0, this.districtKeys.limit(), districtId);
+		return k < this.districtKeys.limit() && this.districtKeys.get(k) == districtId ? k : -1;
+	}
+
+	//first row at or after the given time
+	private int timeRow(LocalDateTime time)
+	{
+		long second = time.toEpochSecond(ZoneOffset.UTC);
+		int from = this.dayRow(time.toLocalDate());
+		int to = this.dayRow(time.toLocalDate().plusDays(1));
+
+		while(from < to)
+		{
+			int middle = (from + to) >>> 1;
+			if(this.epochSeconds.get(middle) < second) from = middle + 1;
+			else to = middle;
+		}
+
+		return from;
+	}
+
+	private static int lowerBound(IntBuffer values, int from, int to, int key)
+	{
+		while(from < to)
+		{
+			int middle = (from + to) >>> 1;
+			if(values.get(middle) < key) from = middle + 1;
+			else to = middle;
+		}
+
+		return from;
+	}
+
+	static long dayOf(long epochSecond)
+	{
+		return Math.floorDiv(epochSecond, 24L * 60 * 60);
+	}
+
+	@Override
+	public List<Year> getAllYears()
+	{
+		List<Year> allYears = new ArrayList<>();
+		if(this.size == 0) return allYears;
+
+		Year last = Year.from(LocalDate.ofEpochDay(dayOf(this.epochSeconds.get(this.size - 1))));
+		for(Year year = Year.from(LocalDate.ofEpochDay(this.firstDay)); !year.isAfter(last); year = year.plusYears(1))
+		{
+			if(this.dayRow(year.atDay(1)) < this.dayRow(year.plusYears(1).atDay(1)))
+				allYears.add(year);
+		}
+
+		return allYears;
+	}
+
+	@Override
+	public Collection<Integer> getAllDistrictIDs()
+	{
+		Collection<Integer> allIDs = new ArrayList<>();
+
+		for(int k=0; k<this.districtKeys.limit(); k++)
+			allIDs.add(this.districtKeys.get(k));
+
+		return allIDs;
+	}
+
+	/**
+	 * Computed from the columns, in one pass over the year's rows
+	 */
+	@Override
+	public Map<Integer, LatLng> getGeographicCenters(Year selectedYear, Map<Integer, Integer> numOfCrimesByDistrict)
+	{
+		int numDistricts = this.districtKeys.limit();
+		double[] sumLat = new double[numDistricts];
+		double[] sumLon = new double[numDistricts];
+		int[] counts = new int[numDistricts];
+
+		int to = this.dayRow(selectedYear.plusYears(1).atDay(1));
+		for(int row=this.dayRow(selectedYear.atDay(1)); row<to; row++)
+		{
+			int k = this.districtIndex(this.districtIds.get(row));
+			if(k < 0) continue;
+
+			sumLat[k] += this.latitudes.get(row);
+			sumLon[k] += this.longitudes.get(row);
+			counts[k]++;
+		}
+
+		Map<Integer, LatLng> districtsGeographicCenters = new HashMap<>();
+
+		for(int k=0; k<numDistricts; k++)
+		{
+			if(counts[k] == 0) continue;
+
+			int districtId = this.districtKeys.get(k);
+			districtsGeographicCenters.put(districtId, new LatLng(sumLat[k] / counts[k], sumLon[k] / counts[k]));
+			numOfCrimesByDistrict.put(districtId, counts[k]);
+		}
+
+		return districtsGeographicCenters;
+	}
+
+	@Override
+	public Collection<Event> getCrimeEventsOn(LocalDate date)
+	{
+		return this.eventsOn(date);
+	}
+
+	//one slice per day: nothing is copied
+	@Override
+	public Map<LocalDate, List<Event>> getCrimeEventsBetween(LocalDate fromDate, LocalDate toDate)
+	{
+		Map<LocalDate, List<Event>> eventsByDay = new LinkedHashMap<>();
+
+		for(LocalDate day = fromDate; day.isBefore(toDate); day = day.plusDays(1))
+			eventsByDay.put(day, this.eventsOn(day));
+
+		return eventsByDay;
+	}
+
+	@Override
+	public EventCursor openCrimeEventsCursor(LocalDateTime from, LocalDateTime to)
+	{
+		int fromRow = this.timeRow(from);
+		Slice slice = new Slice(null, fromRow, Math.max(fromRow, this.timeRow(to)));
+
+		return new EventCursor()
+		{
+			private int position;
+
+			@Override
+			public boolean hasNext()
+			{
+				return this.position < slice.size();
+			}
+
+			@Override
+			public Event next()
+			{
+				if(!this.hasNext())
+					throw new NoSuchElementException();
+
+				return slice.get(this.position++);
+			}
+
+			@Override
+			public void close()
+			{
+			}
+		};
+	}
+
+	/**
+	 * Read-only view over some rows of the store, in time order: either a range of rows or a
+	 * range of the district index. The primitive accessors read the columns directly; get()
+	 * creates an Event with the stored fields only (the other ones are null).
+	 */
+	public class Slice extends AbstractList<Event>
+	{
+		private final IntBuffer rows;		//null if the rows are [from, to) themselves
+		private final int from;
+		private final int to;
+
+
+		private Slice(IntBuffer rows, int from, int to)
+		{
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public int size()
+		{
+			return this.to - this.from;
+		}
+
+		/**
+		 * The store row of the k-th event of the slice
+		 */
+		public int row(int k)
+		{
+			if(k < 0 || k >= this.to - this.from)
+				throw new IndexOutOfBoundsException("Index: " + k + ", size: " + (this.to - this.from));
+
+			return this.rows == null ? this.from + k : this.rows.get(this.from + k);
+		}
+
+		public long epochSecond(int k) { return epochSeconds.get(this.row(k)); }
+		public int districtId(int k) { return districtIds.get(this.row(k)); }
+		public int categoryCode(int k) { return categories.get(this.row(k)); }	//of Event.OFFENSE_CATEGORIES
+		public double latitude(int k) { return latitudes.get(this.row(k)); }
+		public double longitude(int k) { return longitudes.get(this.row(k)); }
+		public long incidentId(int k) { return incidentIds.get(this.row(k)); }
+
+		@Override
+		public Event get(int k)
+		{
+			int row = this.row(k);
+
+			return Event.ofCodes(incidentIds.get(row), categories.get(row),
+					LocalDateTime.ofEpochSecond(epochSeconds.get(row), 0, ZoneOffset.UTC), longitudes.get(row),
+					latitudes.get(row), districtIds.get(row), neighborhoods.get(row));
+		}
+	}
+
+	//growable columns, filled while loading
+	private static class Columns
+	{
+		int size;
+		long[] epochSeconds;
+		int[] districtIds;
+		int[] categories;
+		int[] neighborhoods;
+		double[] latitudes;
+		double[] longitudes;
+		long[] incidentIds;
+
+
+		Columns()
+		{
+			this(INITIAL_CAPACITY);
+		}
+
+		Columns(int capacity)
+		{
+			capacity = Math.max(capacity, 1);
+
+			this.epochSeconds = new long[capacity];
+			this.districtIds = new int[capacity];
+			this.categories = new int[capacity];
+			this.neighborhoods = new int[capacity];
+			this.latitudes = new double[capacity];
+			this.longitudes = new double[capacity];
+			this.incidentIds = new long[capacity];
+		}
+
+		void add(Event event)
+		{
+			this.append(event.getEpochSecond());
+
+			this.districtIds[this.size] = event.getDistrict_id() == null ? NO_DISTRICT : event.getDistrict_id();
+			this.categories[this.size] = event.getOffense_category_code();
+			this.neighborhoods[this.size] = event.getNeighborhood_code();
+			this.latitudes[this.size] = event.getGeo_lat();
+			this.longitudes[this.size] = event.getGeo_lon();
+			this.incidentIds[this.size] = event.getIncident_id() == null ? 0L : event.getIncident_id();
+			this.size++;
+		}
+
+		//copies a row of another store without creating its Event
+		void add(EventStore store, int row)
+		{
+			this.append(store.epochSeconds.get(row));
+
+			this.districtIds[this.size] = store.districtIds.get(row);
+			this.categories[this.size] = store.categories.get(row);
+			this.neighborhoods[this.size] = store.neighborhoods.get(row);
+			this.latitudes[this.size] = store.latitudes.get(row);
+			this.longitudes[this.size] = store.longitudes.get(row);
+			this.incidentIds[this.size] = store.incidentIds.get(row);
+			this.size++;
+		}
+
+		//checks the order and makes room for one more row, whose time is set
+		private void append(long epochSecond)
+		{
+			if(this.size > 0 && epochSecond < this.epochSeconds[this.size - 1])
+				throw new IllegalArgumentException("Error: events are not in time order");
+
+			if(this.size == this.epochSeconds.length)
+				this.grow();
+
+			this.epochSeconds[this.size] = epochSecond;
+		}
+
+		//trims the columns and builds the indexes
+		EventStore toStore()
+		{
+			int n = this.size;
+			long[] epochSeconds = Arrays.copyOf(this.epochSeconds, n);
+			int[] districtIds = Arrays.copyOf(this.districtIds, n);
+
+			//day index
+			long firstDay = n == 0 ? 0L : dayOf(epochSeconds[0]);
+			int numDays = n == 0 ? 0 : (int)(dayOf(epochSeconds[n - 1]) - firstDay) + 1;
+			int[] dayOffsets = new int[numDays + 1];
+			int row = 0;
+
+			for(int d=0; d<=numDays; d++)
+			{
+				long dayStart = (firstDay + d) * 24L * 60 * 60;
+				while(row < n && epochSeconds[row] < dayStart)
+					row++;
+				dayOffsets[d] = row;
+			}
+
+			//district index: counting sort of the rows by district, stable so rows stay in time order
+			int[] districtKeys = Arrays.stream(districtIds).filter(id -> id != NO_DISTRICT).sorted().distinct().toArray();
+			int[] districtOffsets = new int[districtKeys.length + 1];
+
+			for(row=0; row<n; row++)
+			{
+				int k = Arrays.binarySearch(districtKeys, districtIds[row]);
+				if(k >= 0) districtOffsets[k + 1]++;
+			}
+			for(int k=0; k<districtKeys.length; k++)
+				districtOffsets[k + 1] += districtOffsets[k];
+
+			int[] next = Arrays.copyOf(districtOffsets, districtKeys.length);
+			int[] districtRows = new int[districtOffsets[districtKeys.length]];
+
+			for(row=0; row<n; row++)
+			{
+				int k = Arrays.binarySearch(districtKeys, districtIds[row]);
+				if(k >= 0) districtRows[next[k]++] = row;
+			}
+
+			return new EventStore(n, LongBuffer.wrap(epochSeconds), IntBuffer.wrap(districtIds),
+					IntBuffer.wrap(Arrays.copyOf(this.categories, n)), IntBuffer.wrap(Arrays.copyOf(this.neighborhoods, n)),
+					DoubleBuffer.wrap(Arrays.copyOf(this.latitudes, n)), DoubleBuffer.wrap(Arrays.copyOf(this.longitudes, n)),
+					LongBuffer.wrap(Arrays.copyOf(this.incidentIds, n)), firstDay, IntBuffer.wrap(dayOffsets),
+					IntBuffer.wrap(districtKeys), IntBuffer.wrap(districtOffsets), IntBuffer.wrap(districtRows));
+		}
+
+		private void grow()
+		{
+			int capacity = this.epochSeconds.length * 2;
+
+			this.epochSeconds = Arrays.copyOf(this.epochSeconds, capacity);
+			this.districtIds = Arrays.copyOf(this.districtIds, capacity);
+			this.categories = Arrays.copyOf(this.categories, capacity);
+			this.neighborhoods = Arrays.copyOf(this.neighborhoods, capacity);
+			this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+			this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+			this.incidentIds = Arrays.copyOf(this.incidentIds, capacity);
+		}
+	}
+}
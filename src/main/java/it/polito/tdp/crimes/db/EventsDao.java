@@ -2,70 +2,66 @@ package it.polito.tdp.crimes.db;
 
 
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.Year;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.javadocmd.simplelatlng.LatLng;
 
 import it.polito.tdp.crimes.model.Event;
 
-public class EventsDao 
+public class EventsDao implements EventSource
 {
+	//rows fetched from the server at a time by the cursors, overridable with -Dcrimes.db.fetchSize=...
+	private static final int DEFAULT_FETCH_SIZE = Integer.getInteger("crimes.db.fetchSize", 1000);
+	
+	/**
+	 * All the events, in time order, in a single list: prefer streamAllEvents() for the
+	 * whole table, which does not keep the events in memory
+	 */
 	public List<Event> listAllEvents()
 	{
-		String sql = "SELECT * FROM events";
-		try 
-		{
-			Connection conn = DBConnect.getConnection();
-			PreparedStatement st = conn.prepareStatement(sql);
-			List<Event> list = new ArrayList<>();
-			ResultSet res = st.executeQuery();
-			
-			while(res.next()) 
-			{
-				try 
-				{
-					list.add(new Event(res.getLong("incident_id"),
-							res.getInt("offense_code"),
-							res.getInt("offense_code_extension"), 
-							res.getString("offense_type_id"), 
-							res.getString("offense_category_id"),
-							res.getTimestamp("reported_date").toLocalDateTime(),
-							res.getString("incident_address"),
-							res.getDouble("geo_lon"),
-							res.getDouble("geo_lat"),
-							res.getInt("district_id"),
-							res.getInt("precinct_id"), 
-							res.getString("neighborhood_id"),
-							res.getInt("is_crime"),
-							res.getInt("is_traffic")));
-				} 
-				catch (Throwable t) 
-				{
-					t.printStackTrace();
-					System.out.println(res.getInt("id"));
-				}
-			}
-			
-			conn.close();
-			return list ;
-		} 
-		catch (SQLException e) 
+		try(Stream<Event> events = this.streamAllEvents())
 		{
-			e.printStackTrace();
-			return null ;
+			return events.collect(Collectors.toList());
 		}
 	}
-
+	
+	/**
+	 * All the events, in time order, read lazily with the default fetch size
+	 */
+	public Stream<Event> streamAllEvents()
+	{
+		return this.openAllEventsCursor(DEFAULT_FETCH_SIZE).stream();
+	}
+	
+	public Stream<Event> streamAllEvents(int fetchSize)
+	{
+		return this.openAllEventsCursor(fetchSize).stream();
+	}
+	
+	/**
+	 * Time ordered cursor over the whole events table: the driver streams the result set 
+	 * fetchSize rows at a time, so memory does not depend on the size of the table
+	 */
+	public EventCursor openAllEventsCursor(int fetchSize)
+	{
+		return this.openCursor("SELECT * FROM events ORDER BY reported_date ASC", fetchSize, null, null);
+	}
+	
+	@Override
 	public List<Year> getAllYears()
 	{
 		final String sqlQuery = "SELECT DISTINCT YEAR(reported_date) AS year FROM events ORDER BY year ASC";
@@ -102,6 +98,7 @@ public class EventsDao
 		}		
 	}
 
+	@Override
 	public Collection<Integer> getAllDistrictIDs()
 	{
 		final String sqlQuery = "SELECT DISTINCT district_id FROM events ORDER BY district_id ASC";
@@ -137,13 +134,14 @@ public class EventsDao
 		}
 	}
 
+	@Override
 	public Map<Integer, LatLng> getGeographicCenters(Year selectedYear, 
 			Map<Integer, Integer> numOfCrimesByDistrict)
 	{
 		final String sqlQuery = String.format("%s %s %s %s",
 				"SELECT district_id, AVG(geo_lon) AS avgLon, AVG(geo_lat) AS avgLat, COUNT(*) numCrimes",
 				"FROM events",
-				"WHERE YEAR(reported_date) = ?",
+				"WHERE reported_date >= ? AND reported_date < ?",	//not YEAR(): the index can be used
 				"GROUP BY district_id");
 		
 		Map<Integer, LatLng> districtsGeographicCenters = new HashMap<>();
@@ -152,7 +150,8 @@ public class EventsDao
 		{
 			Connection connection = DBConnect.getConnection();
 			PreparedStatement statement = connection.prepareStatement(sqlQuery);
-			statement.setInt(1, selectedYear.getValue());
+			statement.setTimestamp(1, Timestamp.valueOf(selectedYear.atDay(1).atStartOfDay()));
+			statement.setTimestamp(2, Timestamp.valueOf(selectedYear.plusYears(1).atDay(1).atStartOfDay()));
 			ResultSet queryResult = statement.executeQuery();
 			
 			while(queryResult.next())
@@ -178,9 +177,11 @@ public class EventsDao
 		}
 	}
 
+	@Override
 	public Collection<Event> getCrimeEventsOn(LocalDate date)
 	{
-		final String sqlQuery = "SELECT * FROM events WHERE DATE(reported_date) = ?";
+		//not DATE(): the index can be used
+		final String sqlQuery = "SELECT * FROM events WHERE reported_date >= ? AND reported_date < ?";
 		
 		Collection<Event> events = new ArrayList<>();
 		
@@ -188,27 +189,15 @@ public class EventsDao
 		{
 			Connection connection = DBConnect.getConnection();
 			PreparedStatement statement = connection.prepareStatement(sqlQuery);
-			statement.setDate(1, Date.valueOf(date));
+			statement.setTimestamp(1, Timestamp.valueOf(date.atStartOfDay()));
+			statement.setTimestamp(2, Timestamp.valueOf(date.plusDays(1).atStartOfDay()));
 			ResultSet queryResult = statement.executeQuery();
 			
 			while(queryResult.next()) 
 			{
 				try 
 				{
-					events.add(new Event(queryResult.getLong("incident_id"),
-							queryResult.getInt("offense_code"),
-							queryResult.getInt("offense_code_extension"), 
-							queryResult.getString("offense_type_id"), 
-							queryResult.getString("offense_category_id"),
-							queryResult.getTimestamp("reported_date").toLocalDateTime(),
-							queryResult.getString("incident_address"),
-							queryResult.getDouble("geo_lon"),
-							queryResult.getDouble("geo_lat"),
-							queryResult.getInt("district_id"),
-							queryResult.getInt("precinct_id"), 
-							queryResult.getString("neighborhood_id"),
-							queryResult.getInt("is_crime"),
-							queryResult.getInt("is_traffic")));
+					events.add(toEvent(queryResult));
 				} 
 				catch (Throwable t) 
 				{
@@ -225,4 +214,131 @@ public class EventsDao
 			throw new RuntimeException("Dao error in getCrimeEventsOn()", sqle);
 		}
 	}
+
+	/**
+	 * The crime events of the days in [fromDate, toDate), read with a single query and grouped
+	 * by day (every day of the range is a key, in order, possibly with no events)
+	 */
+	@Override
+	public Map<LocalDate, List<Event>> getCrimeEventsBetween(LocalDate fromDate, LocalDate toDate)
+	{
+		Map<LocalDate, List<Event>> eventsByDay = EventSource.emptyDays(fromDate, toDate);
+		
+		try(EventCursor events = this.openCrimeEventsCursor(fromDate.atStartOfDay(), toDate.atStartOfDay()))
+		{
+			while(events.hasNext())
+			{
+				Event event = events.next();
+				eventsByDay.get(event.getReported_date().toLocalDate()).add(event);
+			}
+		}
+		
+		return eventsByDay;
+	}
+	
+	/**
+	 * Creates the indexes the queries rely on, if they do not exist yet: optional, queries
+	 * work without them, but scan the whole table. Can take a while on the full dataset.
+	 */
+	public void createIndexes()
+	{
+		final String[] statements = {
+				"CREATE INDEX IF NOT EXISTS events_reported_date ON events (reported_date)",
+				"CREATE INDEX IF NOT EXISTS events_district_reported_date ON events (district_id, reported_date)"
+		};
+		
+		Connection connection = DBConnect.getConnection();
+		
+		try(Statement statement = connection.createStatement())
+		{
+			for(String sql : statements)
+				statement.executeUpdate(sql);
+		}
+		catch(SQLException sqle)
+		{
+			sqle.printStackTrace();
+			throw new RuntimeException("Dao error in createIndexes()", sqle);
+		}
+		finally
+		{
+			DBConnect.close(connection);
+		}
+	}
+
+	/**
+	 * Opens a forward-only cursor over the crime events reported in [from, to), ordered by time.
+	 * Rows are fetched from the server fetchSize at a time, so only a bounded window of events
+	 * is held in memory. The caller must close the cursor.
+	 */
+	@Override
+	public EventCursor openCrimeEventsCursor(LocalDateTime from, LocalDateTime to)
+	{
+		return this.openCrimeEventsCursor(from, to, DEFAULT_FETCH_SIZE);
+	}
+	
+	public EventCursor openCrimeEventsCursor(LocalDateTime from, LocalDateTime to, int fetchSize)
+	{
+		final String sqlQuery = String.format("%s %s %s",
+				"SELECT * FROM events",
+				"WHERE reported_date >= ? AND reported_date < ?",
+				"ORDER BY reported_date ASC");
+		
+		return this.openCursor(sqlQuery, fetchSize, from, to);
+	}
+	
+	//forward-only, read-only result set, which MariaDB streams instead of reading it all up front
+	private EventCursor openCursor(String sqlQuery, int fetchSize, LocalDateTime from, LocalDateTime to)
+	{
+		if(fetchSize < 1)
+			throw new IllegalArgumentException("Error: fetch size must be positive");
+		
+		Connection connection = DBConnect.getConnection();
+		PreparedStatement statement = null;
+		
+		try 
+		{
+			statement = connection.prepareStatement(sqlQuery, 
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(fetchSize);
+			
+			if(from != null)
+			{
+				statement.setTimestamp(1, Timestamp.valueOf(from));
+				statement.setTimestamp(2, Timestamp.valueOf(to));
+			}
+			
+			ResultSet queryResult = statement.executeQuery();
+			
+			return new ResultSetEventCursor(connection, statement, queryResult);
+		} 
+		catch (SQLException sqle) 
+		{
+			sqle.printStackTrace();
+			
+			if(statement != null)
+				DBConnect.close(statement, connection);
+			else
+				DBConnect.close(connection);
+			
+			throw new RuntimeException("Dao error opening events cursor", sqle);
+		}
+	}
+	
+	static Event toEvent(ResultSet queryResult) throws SQLException
+	{
+		return new Event(queryResult.getLong("incident_id"),
+				queryResult.getInt("offense_code"),
+				queryResult.getInt("offense_code_extension"), 
+				queryResult.getString("offense_type_id"), 
+				queryResult.getString("offense_category_id"),
+				queryResult.getTimestamp("reported_date").toLocalDateTime(),
+				queryResult.getString("incident_address"),
+				queryResult.getDouble("geo_lon"),
+				queryResult.getDouble("geo_lat"),
+				queryResult.getInt("district_id"),
+				queryResult.getInt("precinct_id"), 
+				queryResult.getString("neighborhood_id"),
+				queryResult.getInt("is_crime"),
+				queryResult.getInt("is_traffic"));
+	}
 }
@@ -0,0 +1,65 @@
+package it.polito.tdp.crimes.db;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of a CsvEventLoader.load(): every record read is either inserted, ignored by the
+ * database or rejected by validation. Ignored rows are those INSERT IGNORE did not insert:
+ * mostly duplicates of rows already in the table (same key, left as they are), but the count
+ * cannot tell them from rows dropped for other errors the database turns into warnings.
+ */
+public class LoadReport
+{
+	private final long rowsRead;
+	private final long rowsInserted;
+	private final long rowsIgnored;
+	private final Map<String, Long> rejectedByReason;
+	private final long elapsedNanos;
+
+
+	LoadReport(long rowsRead, long rowsInserted, long rowsIgnored, Map<String, Long> rejectedByReason, long elapsedNanos)
+	{
+		this.rowsRead = rowsRead;
+		this.rowsInserted = rowsInserted;
+		this.rowsIgnored = rowsIgnored;
+		this.rejectedByReason = Collections.unmodifiableMap(new TreeMap<>(rejectedByReason));
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getRowsRead() { return this.rowsRead; }
+	public long getRowsInserted() { return this.rowsInserted; }
+	public long getRowsIgnored() { return this.rowsIgnored; }
+	public Map<String, Long> getRejectedByReason() { return this.rejectedByReason; }
+	public double getElapsedSeconds() { return this.elapsedNanos / 1e9; }
+
+	public long getRowsRejected()
+	{
+		return this.rejectedByReason.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	/**
+	 * Records read per second, from the first line read to the last row committed
+	 */
+	public double getRowsPerSecond()
+	{
+		return this.elapsedNanos == 0 ? 0.0 : this.rowsRead / this.getElapsedSeconds();
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(String.format("%d rows read in %.1f s (%.0f rows/s)%n", this.rowsRead, this.getElapsedSeconds(),
+				this.getRowsPerSecond()));
+		sb.append(String.format("%d inserted, %d ignored (duplicates), %d rejected", this.rowsInserted, this.rowsIgnored,
+				this.getRowsRejected()));
+
+		for(var reason : this.rejectedByReason.entrySet())
+			sb.append(String.format("%n - %s: %d", reason.getKey(), reason.getValue()));
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,78 @@
+package it.polito.tdp.crimes.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import it.polito.tdp.crimes.model.Event;
+
+class ResultSetEventCursor implements EventCursor
+{
+	private final Connection connection;
+	private final PreparedStatement statement;
+	private final ResultSet queryResult;
+	
+	private Event nextEvent;
+	private boolean closed;
+	
+	
+	ResultSetEventCursor(Connection connection, PreparedStatement statement, ResultSet queryResult)
+	{
+		this.connection = connection;
+		this.statement = statement;
+		this.queryResult = queryResult;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if(this.nextEvent != null) return true;
+		if(this.closed) return false;
+		
+		try
+		{
+			while(this.queryResult.next())
+			{
+				try
+				{
+					this.nextEvent = EventsDao.toEvent(this.queryResult);
+					return true;
+				}
+				catch(RuntimeException re)
+				{
+					re.printStackTrace();	//malformed row (e.g. no date): skipped, as in the other queries
+				}
+			}
+		}
+		catch(SQLException sqle)
+		{
+			this.close();
+			throw new RuntimeException("Dao error reading events cursor", sqle);
+		}
+		
+		this.close();	//end of the result set
+		return false;
+	}
+
+	@Override
+	public Event next()
+	{
+		if(!this.hasNext())
+			throw new NoSuchElementException();
+		
+		Event event = this.nextEvent;
+		this.nextEvent = null;
+		return event;
+	}
+
+	@Override
+	public void close()
+	{
+		if(this.closed) return;
+		
+		this.closed = true;
+		DBConnect.close(this.queryResult, this.statement, this.connection);
+	}
+}
@@ -0,0 +1,407 @@
+package it.polito.tdp.crimes.db;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Deterministic generator of Denver-like crime events, usable in place of the database.
+ * <p>
+ * Districts are laid on a jittered grid around the city centre and get Zipf-distributed
+ * crime rates; every crime is scattered around its district centre. The number of crimes
+ * of a day follows a seasonal and weekly profile around meanEventsPerDay, and the hour of
+ * each crime follows a typical daily profile. Every day is generated from its own random
+ * stream, so any day (or range of days) is reproducible without generating the others.
+ */
+public class SyntheticEventSource implements EventSource
+{
+	private static final double CENTER_LAT = 39.7392;
+	private static final double CENTER_LON = -104.9903;
+	private static final double CITY_RADIUS_DEGREES = 0.15;
+	private static final double DISTRICT_RATE_EXPONENT = 0.8;
+	private static final int SECONDS_PER_HOUR = 60 * 60;
+	private static final int MAX_EVENTS_PER_DAY = 1_000_000;	//keeps incident ids unique
+
+	private static final String[] CATEGORIES = { "all_other_crimes", "larceny", "theft-from-motor-vehicle",
+			"public-disorder", "drug-alcohol", "auto-theft", "burglary", "other-crimes-against-persons",
+			"aggravated-assault", "robbery", "white-collar-crime", "arson", "murder" };
+	private static final double[] CATEGORY_WEIGHTS = { 22, 16, 12, 11, 9, 8, 7, 6, 4, 2, 2, 0.5, 0.1 };
+	private static final double[] HOUR_WEIGHTS = { 5, 4, 4, 3, 2, 2, 2, 3, 5, 6, 6, 7,
+			8, 7, 7, 7, 8, 8, 8, 7, 7, 6, 6, 5 };
+
+	private final long seed;
+	private final int numDistricts;
+	private final Year firstYear;
+	private final Year lastYear;
+	private final int meanEventsPerDay;
+
+	private final double[] districtLat;
+	private final double[] districtLon;
+	private final double[] districtCumulativeWeights;
+	private final double districtSpreadDegrees;
+	private final double[] categoryCumulativeWeights;
+	private final double[] hourCumulativeWeights;
+
+	private final Map<Year, YearSummary> yearSummaries;
+
+
+	public SyntheticEventSource(long seed, int numDistricts, Year firstYear, Year lastYear, int meanEventsPerDay)
+	{
+		if(numDistricts < 1 || firstYear.isAfter(lastYear) || meanEventsPerDay < 0)
+			throw new IllegalArgumentException("Error: invalid synthetic event source configuration");
+
+		this.seed = seed;
+		this.numDistricts = numDistricts;
+		this.firstYear = firstYear;
+		this.lastYear = lastYear;
+		this.meanEventsPerDay = meanEventsPerDay;
+
+		this.districtLat = new double[numDistricts];
+		this.districtLon = new double[numDistricts];
+		this.districtCumulativeWeights = new double[numDistricts];
+
+		//districts on a jittered grid covering the city
+		SplittableRandom random = new SplittableRandom(seed);
+		int side = (int)Math.ceil(Math.sqrt(numDistricts));
+		double cellDegrees = 2 * CITY_RADIUS_DEGREES / side;
+		this.districtSpreadDegrees = cellDegrees / 4;
+
+		double[] rates = new double[numDistricts];
+		for(int i=0; i<numDistricts; i++)
+		{
+			int row = i / side;
+			int col = i % side;
+			this.districtLat[i] = CENTER_LAT - CITY_RADIUS_DEGREES + (row + 0.25 + random.nextDouble() / 2) * cellDegrees;
+			this.districtLon[i] = CENTER_LON - CITY_RADIUS_DEGREES + (col + 0.25 + random.nextDouble() / 2) * cellDegrees;
+			rates[i] = 1.0 / Math.pow(i + 1, DISTRICT_RATE_EXPONENT);
+		}
+
+		//Zipf rates, shuffled so that busy districts are not all in the same corner
+		for(int i=numDistricts-1; i>0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			double swap = rates[i];
+			rates[i] = rates[j];
+			rates[j] = swap;
+		}
+
+		cumulate(rates, this.districtCumulativeWeights);
+		this.categoryCumulativeWeights = cumulate(CATEGORY_WEIGHTS, new double[CATEGORY_WEIGHTS.length]);
+		this.hourCumulativeWeights = cumulate(HOUR_WEIGHTS, new double[HOUR_WEIGHTS.length]);
+
+		this.yearSummaries = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public List<Year> getAllYears()
+	{
+		List<Year> allYears = new ArrayList<>();
+
+		for(Year year = this.firstYear; !year.isAfter(this.lastYear); year = year.plusYears(1))
+			allYears.add(year);
+
+		return allYears;
+	}
+
+	@Override
+	public Collection<Integer> getAllDistrictIDs()
+	{
+		Collection<Integer> allIDs = new ArrayList<>();
+
+		for(int i=0; i<this.numDistricts; i++)
+			allIDs.add(districtIdOf(i));
+
+		return allIDs;
+	}
+
+	@Override
+	public Map<Integer, LatLng> getGeographicCenters(Year selectedYear, Map<Integer, Integer> numOfCrimesByDistrict)
+	{
+		YearSummary summary = this.yearSummaries.computeIfAbsent(selectedYear, this::summarise);
+		Map<Integer, LatLng> districtsGeographicCenters = new HashMap<>();
+
+		for(int i=0; i<this.numDistricts; i++)
+		{
+			long count = summary.counts[i];
+			if(count == 0) continue;
+
+			districtsGeographicCenters.put(districtIdOf(i),
+					new LatLng(summary.sumLat[i] / count, summary.sumLon[i] / count));
+			numOfCrimesByDistrict.put(districtIdOf(i), (int)count);
+		}
+
+		return districtsGeographicCenters;
+	}
+
+	@Override
+	public Collection<Event> getCrimeEventsOn(LocalDate date)
+	{
+		DayBatch day = this.generate(date);
+		Collection<Event> events = new ArrayList<>(day.size);
+
+		for(int i=0; i<day.size; i++)
+			events.add(day.toEvent(i));
+
+		return events;
+	}
+
+	@Override
+	public EventCursor openCrimeEventsCursor(LocalDateTime from, LocalDateTime to)
+	{
+		return new SyntheticEventCursor(from, to);
+	}
+
+	public int getNumDistricts()
+	{
+		return this.numDistricts;
+	}
+
+	public int getMeanEventsPerDay()
+	{
+		return this.meanEventsPerDay;
+	}
+
+	private YearSummary summarise(Year year)
+	{
+		YearSummary summary = new YearSummary(this.numDistricts);
+
+		if(year.isBefore(this.firstYear) || year.isAfter(this.lastYear))
+			return summary;
+
+		for(LocalDate date = year.atDay(1); date.getYear() == year.getValue(); date = date.plusDays(1))
+		{
+			DayBatch day = this.generate(date);
+
+			for(int i=0; i<day.size; i++)
+			{
+				int district = day.districts[i];
+				summary.counts[district]++;
+				summary.sumLat[district] += day.lat[i];
+				summary.sumLon[district] += day.lon[i];
+			}
+		}
+
+		return summary;
+	}
+
+	private DayBatch generate(LocalDate date)
+	{
+		if(date.getYear() < this.firstYear.getValue() || date.getYear() > this.lastYear.getValue())
+			return new DayBatch(date, 0);
+
+		long epochDay = date.toEpochDay();
+		SplittableRandom random = new SplittableRandom(new SplittableRandom(this.seed ^ epochDay).nextLong());
+
+		//summer and weekends are busier
+		double seasonalFactor = 1.0 + 0.15 * Math.cos(2 * Math.PI * (date.getDayOfYear() - 200) / 365.0);
+		DayOfWeek dayOfWeek = date.getDayOfWeek();
+		double weeklyFactor = dayOfWeek == DayOfWeek.FRIDAY || dayOfWeek == DayOfWeek.SATURDAY ? 1.1 :
+				dayOfWeek == DayOfWeek.SUNDAY ? 0.9 : 1.0;
+		double expected = this.meanEventsPerDay * seasonalFactor * weeklyFactor;
+		int size = (int)Math.round(Math.max(0.0, expected + gaussian(random) * Math.sqrt(expected)));
+		size = Math.min(size, MAX_EVENTS_PER_DAY - 1);
+
+		DayBatch day = new DayBatch(date, size);
+		long midnight = date.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+
+		for(int i=0; i<size; i++)
+		{
+			int hour = sample(this.hourCumulativeWeights, random.nextDouble());
+			day.times[i] = midnight + hour * SECONDS_PER_HOUR + random.nextInt(SECONDS_PER_HOUR);
+		}
+		Arrays.sort(day.times);
+
+		for(int i=0; i<size; i++)
+		{
+			int district = sample(this.districtCumulativeWeights, random.nextDouble());
+			day.districts[i] = district;
+			day.lat[i] = this.districtLat[district] + gaussian(random) * this.districtSpreadDegrees;
+			day.lon[i] = this.districtLon[district] + gaussian(random) * this.districtSpreadDegrees;
+			day.categories[i] = sample(this.categoryCumulativeWeights, random.nextDouble());
+			day.variants[i] = random.nextInt(4);
+		}
+
+		return day;
+	}
+
+	private static double[] cumulate(double[] weights, double[] cumulative)
+	{
+		double total = 0.0;
+		for(double weight : weights)
+			total += weight;
+
+		double sum = 0.0;
+		for(int i=0; i<weights.length; i++)
+		{
+			sum += weights[i];
+			cumulative[i] = sum / total;
+		}
+
+		cumulative[weights.length - 1] = 1.0;
+		return cumulative;
+	}
+
+	//standard normal sample (Box-Muller)
+	private static double gaussian(SplittableRandom random)
+	{
+		double u1 = 1.0 - random.nextDouble();	//in (0, 1]
+		double u2 = random.nextDouble();
+		return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+	}
+
+	//index of the first cumulative weight greater than u
+	private static int sample(double[] cumulativeWeights, double u)
+	{
+		int index = Arrays.binarySearch(cumulativeWeights, u);
+		index = index >= 0 ? index + 1 : -index - 1;
+		return Math.min(index, cumulativeWeights.length - 1);
+	}
+
+	private static int districtIdOf(int districtIndex)
+	{
+		return districtIndex + 1;
+	}
+
+	private static class YearSummary
+	{
+		final long[] counts;
+		final double[] sumLat;
+		final double[] sumLon;
+
+		YearSummary(int numDistricts)
+		{
+			this.counts = new long[numDistricts];
+			this.sumLat = new double[numDistricts];
+			this.sumLon = new double[numDistricts];
+		}
+	}
+
+	//events of one day, in time order
+	private static class DayBatch
+	{
+		final LocalDate date;
+		final int size;
+		final long[] times;	//epoch seconds
+		final int[] districts;
+		final double[] lat;
+		final double[] lon;
+		final int[] categories;
+		final int[] variants;
+
+		DayBatch(LocalDate date, int size)
+		{
+			this.date = date;
+			this.size = size;
+			this.times = new long[size];
+			this.districts = new int[size];
+			this.lat = new double[size];
+			this.lon = new double[size];
+			this.categories = new int[size];
+			this.variants = new int[size];
+		}
+
+		Event toEvent(int i)
+		{
+			long incidentId = this.date.toEpochDay() * MAX_EVENTS_PER_DAY + i;
+			int districtId = districtIdOf(this.districts[i]);
+			String category = CATEGORIES[this.categories[i]];
+
+			return new Event(incidentId,
+					1000 + this.categories[i] * 10 + this.variants[i],
+					this.variants[i],
+					category + "-" + this.variants[i],
+					category,
+					LocalDateTime.ofEpochSecond(this.times[i], 0, ZoneOffset.UTC),
+					"",
+					this.lon[i],
+					this.lat[i],
+					districtId,
+					districtId * 100 + this.variants[i],
+					"neighborhood-" + districtId + "-" + this.variants[i],
+					1,
+					0);
+		}
+	}
+
+	//generates one day at a time, so memory does not depend on the length of the range
+	private class SyntheticEventCursor implements EventCursor
+	{
+		private final long fromSecond;
+		private final long toSecond;
+		private LocalDate nextDate;
+		private final LocalDate lastDate;
+		private DayBatch day;
+		private int position;
+
+		SyntheticEventCursor(LocalDateTime from, LocalDateTime to)
+		{
+			this.fromSecond = from.toEpochSecond(ZoneOffset.UTC);
+			this.toSecond = to.toEpochSecond(ZoneOffset.UTC);
+			this.nextDate = from.toLocalDate();
+			this.lastDate = to.toLocalDate();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while(true)
+			{
+				if(this.day != null)
+				{
+					while(this.position < this.day.size && this.day.times[this.position] < this.fromSecond)
+						this.position++;
+
+					if(this.position < this.day.size)
+					{
+						if(this.day.times[this.position] < this.toSecond)
+							return true;
+						
+						this.close();	//end of the range
+						return false;
+					}
+				}
+
+				if(this.nextDate == null || this.nextDate.isAfter(this.lastDate))
+				{
+					this.close();
+					return false;
+				}
+
+				this.day = generate(this.nextDate);
+				this.position = 0;
+				this.nextDate = this.nextDate.plusDays(1);
+			}
+		}
+
+		@Override
+		public Event next()
+		{
+			if(!this.hasNext())
+				throw new NoSuchElementException();
+
+			return this.day.toEvent(this.position++);
+		}
+
+		@Override
+		public void close()
+		{
+			this.day = null;
+			this.nextDate = null;
+		}
+	}
+}
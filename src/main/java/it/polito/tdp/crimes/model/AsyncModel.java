@@ -0,0 +1,223 @@
+package it.polito.tdp.crimes.model;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import it.polito.tdp.crimes.model.SimulationSweep.ProgressListener;
+import it.polito.tdp.simulation.DispatchStrategy;
+
+/**
+ * Non-blocking front of a Model for the user interface: every operation runs on a dedicated
+ * pool of daemon threads and completes the returned CompletableFuture. The read-only startup
+ * queries run in parallel; the operations that change the model (graph, simulations) are run
+ * one at a time. Cancelling a returned future stops its operation at the next step. A graph
+ * build and a day of simulation have a single step, reading their data: cancelled meanwhile,
+ * they leave the model as it was. Once they start changing the model they can no longer be
+ * cancelled, and cancel() returns false.
+ */
+public class AsyncModel
+{
+	private static final int NUM_THREADS = 2;	//enough for the independent startup queries
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final Model model;
+	private final ExecutorService executor;
+
+	//a step of an operation, which calls checkCancelled between its own steps, and commit before
+	//a change that must not be cancelled any more (both throw CancellationException if cancelled)
+	private interface Operation<T>
+	{
+		T run(Runnable checkCancelled, Runnable commit);
+	}
+
+	//refuses to be cancelled once committed
+	private static class OperationFuture<T> extends CompletableFuture<T>
+	{
+		private boolean committed;
+
+		synchronized void commit()
+		{
+			if(this.isCancelled())
+				throw new CancellationException("Operation cancelled");
+
+			this.committed = true;
+		}
+
+		@Override
+		public synchronized boolean cancel(boolean mayInterruptIfRunning)
+		{
+			return !this.committed && super.cancel(mayInterruptIfRunning);
+		}
+	}
+
+
+	public AsyncModel(Model model)
+	{
+		this.model = model;
+		this.executor = Executors.newFixedThreadPool(NUM_THREADS, AsyncModel::newThread);
+	}
+
+	public Model getModel()
+	{
+		return this.model;
+	}
+
+	public CompletableFuture<List<Year>> getAllYears()
+	{
+		return this.submit((checkCancelled, commit) -> this.model.getAllYears());
+	}
+
+	public CompletableFuture<Collection<Integer>> getAllDistrictIDs()
+	{
+		return this.submit((checkCancelled, commit) -> this.model.getAllDistrictIDs());
+	}
+
+	/**
+	 * Opens the event source (see Model.openEventSource()), then reads the years and the
+	 * districts in parallel and starts precomputing the graphs of all the years
+	 * (see Model.precomputeGraphs()). Completes with the years.
+	 */
+	public CompletableFuture<List<Year>> loadStartupData()
+	{
+		CompletableFuture<Void> opened = this.submit((checkCancelled, commit) ->
+		{
+			this.model.openEventSource();
+			return null;
+		});
+
+		return opened.thenCompose(v -> this.getAllYears().thenCombine(this.getAllDistrictIDs(), (years, districtIDs) ->
+		{
+			this.model.precomputeGraphs();
+			return years;
+		}));
+	}
+
+	public CompletableFuture<Void> createGraph(Year selectedYear, ProgressListener listener)
+	{
+		return this.createGraph(selectedYear, listener, model -> null);
+	}
+
+	/**
+	 * Creates the graph, then completes with the result of the given function, computed
+	 * from the model before any other operation can change it
+	 */
+	public <T> CompletableFuture<T> createGraph(Year selectedYear, ProgressListener listener, Function<Model, T> result)
+	{
+		return this.submit((checkCancelled, commit) ->
+		{
+			synchronized(this.model)
+			{
+				progress(listener, 0, 2);
+				checkCancelled.run();
+				this.model.createGraph(selectedYear, () ->
+				{
+					progress(listener, 1, 2);
+					commit.run();
+				});
+				T value = result.apply(this.model);
+				progress(listener, 2, 2);
+				return value;
+			}
+		});
+	}
+
+	/**
+	 * Completes with the number of bad managed events, or null if there are no crime events in the date
+	 */
+	public CompletableFuture<Integer> runSimulation(int numAgents, LocalDate date, ProgressListener listener)
+	{
+		return this.submit((checkCancelled, commit) ->
+		{
+			synchronized(this.model)
+			{
+				progress(listener, 0, 2);
+				checkCancelled.run();
+				boolean ok = this.model.runSimulation(numAgents, date, DispatchStrategy.NEAREST_AVAILABLE, () ->
+				{
+					progress(listener, 1, 2);
+					commit.run();
+				});
+				progress(listener, 2, 2);
+				return ok ? this.model.getNumOfBadManagedEvents() : null;
+			}
+		});
+	}
+
+	/**
+	 * Runs a sweep (see Model.createSweep()), reporting its progress cell by cell:
+	 * cancelling the future cancels the sweep at the next day
+	 */
+	public CompletableFuture<SweepResult> runSweep(int minAgents, int maxAgents, LocalDate fromDate, LocalDate toDate,
+			int numReplications, long seed, ProgressListener listener)
+	{
+		AtomicReference<SimulationSweep> sweep = new AtomicReference<>();
+
+		CompletableFuture<SweepResult> future = this.submit((checkCancelled, commit) ->
+		{
+			//the sweep works on the current graph, but does not change the model while it runs
+			synchronized(this.model)
+			{
+				sweep.set(this.model.createSweep(minAgents, maxAgents, fromDate, toDate, numReplications, seed));
+			}
+
+			checkCancelled.run();
+			return sweep.get().run(listener);
+		});
+
+		future.whenComplete((result, exception) ->
+		{
+			if(future.isCancelled() && sweep.get() != null)
+				sweep.get().cancel();
+		});
+
+		return future;
+	}
+
+	private <T> CompletableFuture<T> submit(Operation<T> operation)
+	{
+		OperationFuture<T> future = new OperationFuture<>();
+
+		Runnable checkCancelled = () ->
+		{
+			if(future.isCancelled())
+				throw new CancellationException("Operation cancelled");
+		};
+
+		this.executor.execute(() ->
+		{
+			if(future.isDone()) return;	//cancelled while waiting for a thread
+
+			try
+			{
+				future.complete(operation.run(checkCancelled, future::commit));
+			}
+			catch(Throwable t)
+			{
+				future.completeExceptionally(t);
+			}
+		});
+
+		return future;
+	}
+
+	private static void progress(ProgressListener listener, long workDone, long totalWork)
+	{
+		if(listener != null) listener.progressChanged(workDone, totalWork);
+	}
+
+	private static Thread newThread(Runnable task)
+	{
+		Thread thread = new Thread(task, "model-async-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);	//must not keep the application alive
+		return thread;
+	}
+}
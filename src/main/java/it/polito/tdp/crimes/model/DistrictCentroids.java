@@ -0,0 +1,143 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+/**
+ * Running coordinate sums and crime counts of the districts of a year, so that crimes added
+ * after the year has been loaded move the districts' centres without scanning the table again.
+ * Districts are addressed by dense index (sorted ids, as in DistrictGraphBuilder); the ones
+ * whose centre moved since the last takeMoved() are remembered. Thread safe.
+ */
+class DistrictCentroids
+{
+	private final int[] districtIds;		//sorted
+	private final double[] latitudeSums;
+	private final double[] longitudeSums;
+	private final int[] counts;
+	private final boolean[] moved;
+	private int numMoved;
+
+
+	private DistrictCentroids(int[] districtIds)
+	{
+		int n = districtIds.length;
+
+		this.districtIds = districtIds;
+		this.latitudeSums = new double[n];
+		this.longitudeSums = new double[n];
+		this.counts = new int[n];
+		this.moved = new boolean[n];
+	}
+
+	/**
+	 * Starts from the averages and counts of a full scan (see EventSource.getGeographicCenters())
+	 */
+	static DistrictCentroids of(int[] districtIds, Map<Integer, LatLng> centers, Map<Integer, Integer> numOfCrimesByDistrict)
+	{
+		DistrictCentroids centroids = new DistrictCentroids(districtIds);
+
+		for(var pair : centers.entrySet())
+		{
+			int index = Arrays.binarySearch(districtIds, pair.getKey());
+			Integer count = numOfCrimesByDistrict.get(pair.getKey());
+			if(index < 0 || count == null) continue;
+
+			centroids.latitudeSums[index] = pair.getValue().getLatitude() * count;
+			centroids.longitudeSums[index] = pair.getValue().getLongitude() * count;
+			centroids.counts[index] = count;
+		}
+
+		return centroids;
+	}
+
+	int size()
+	{
+		return this.districtIds.length;
+	}
+
+	/**
+	 * Adds the crime to its district's sums; returns false if the district is unknown
+	 */
+	synchronized boolean add(Event event)
+	{
+		Integer districtId = event.getDistrict_id();
+		if(districtId == null) return false;
+
+		int index = Arrays.binarySearch(this.districtIds, districtId);
+		if(index < 0) return false;
+
+		this.latitudeSums[index] += event.getGeo_lat();
+		this.longitudeSums[index] += event.getGeo_lon();
+		this.counts[index]++;
+
+		if(!this.moved[index])
+		{
+			this.moved[index] = true;
+			this.numMoved++;
+		}
+
+		return true;
+	}
+
+	synchronized boolean hasMoved()
+	{
+		return this.numMoved > 0;
+	}
+
+	/**
+	 * The (sorted) indices of the districts whose centre moved since the last call
+	 */
+	synchronized int[] takeMoved()
+	{
+		int[] indices = new int[this.numMoved];
+		int k = 0;
+
+		for(int i=0; i<this.moved.length; i++)
+		{
+			if(this.moved[i])
+			{
+				indices[k++] = i;
+				this.moved[i] = false;
+			}
+		}
+
+		this.numMoved = 0;
+		return indices;
+	}
+
+	/**
+	 * The current centres (NaN for the districts without crimes)
+	 */
+	synchronized GreatCircle centers()
+	{
+		int n = this.districtIds.length;
+		double[] latitudes = new double[n];
+		double[] longitudes = new double[n];
+
+		for(int i=0; i<n; i++)
+		{
+			latitudes[i] = this.counts[i] == 0 ? Double.NaN : this.latitudeSums[i] / this.counts[i];
+			longitudes[i] = this.counts[i] == 0 ? Double.NaN : this.longitudeSums[i] / this.counts[i];
+		}
+
+		return GreatCircle.of(latitudes, longitudes);
+	}
+
+	synchronized Map<Integer, Integer> getNumOfCrimesByDistrict()
+	{
+		Map<Integer, Integer> numOfCrimesByDistrict = new HashMap<>();
+
+		for(int i=0; i<this.districtIds.length; i++)
+		{
+			if(this.counts[i] > 0)
+				numOfCrimesByDistrict.put(this.districtIds[i], this.counts[i]);
+		}
+
+		return Collections.unmodifiableMap(numOfCrimesByDistrict);
+	}
+}
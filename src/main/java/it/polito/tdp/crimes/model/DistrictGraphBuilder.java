@@ -0,0 +1,121 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.builder.GraphTypeBuilder;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+/**
+ * Builds the complete district graph from the districts' geographic centres.
+ * <p>
+ * Centres are copied once into primitive arrays (sorted by district id), the pairwise
+ * great-circle distances are computed in one batch by GreatCircle, and the result is kept
+ * as a dense row-major n×n matrix that is then bulk-loaded into the JGraphT graph (and can
+ * be handed to a DistanceMatrix without going through the graph).
+ */
+public class DistrictGraphBuilder
+{
+	private final int[] districtIds;		//sorted
+	private final GreatCircle centers;		//missing if the district has no centre
+
+
+	private DistrictGraphBuilder(int[] districtIds, GreatCircle centers)
+	{
+		this.districtIds = districtIds;
+		this.centers = centers;
+	}
+
+	/**
+	 * All the given districts become vertices: the ones without a centre are left isolated.
+	 * Throws RuntimeException if a centre belongs to a district that is not in the collection.
+	 */
+	public static DistrictGraphBuilder of(Collection<Integer> districtIDs, Map<Integer, LatLng> centers)
+	{
+		int[] districtIds = districtIDs.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+		int n = districtIds.length;
+
+		double[] latitudes = new double[n];
+		double[] longitudes = new double[n];
+		Arrays.fill(latitudes, Double.NaN);
+		Arrays.fill(longitudes, Double.NaN);
+
+		for(var pair : centers.entrySet())
+		{
+			int index = Arrays.binarySearch(districtIds, pair.getKey());
+
+			if(index < 0)
+				throw new RuntimeException("Error: node not found in graph");
+
+			latitudes[index] = pair.getValue().getLatitude();
+			longitudes[index] = pair.getValue().getLongitude();
+		}
+
+		return new DistrictGraphBuilder(districtIds, GreatCircle.of(latitudes, longitudes));
+	}
+
+	public int size()
+	{
+		return this.districtIds.length;
+	}
+
+	/**
+	 * Returns the (sorted) district ids: index i of the matrices refers to districtIds[i]
+	 */
+	public int[] getDistrictIds()
+	{
+		return this.districtIds;
+	}
+
+	/**
+	 * Dense row-major matrix of the distances (km) between all the districts: 0 on the
+	 * diagonal and +Infinity between districts without a centre.
+	 */
+	public double[] computeDistances()
+	{
+		return this.centers.distanceMatrix();
+	}
+
+	/**
+	 * Creates the weighted graph with all the districts as vertices and an edge for every
+	 * pair of districts at finite distance, from a matrix returned by computeDistances().
+	 * Edges are known to be new, so they are added without any lookup.
+	 */
+	public Graph<Integer, DefaultWeightedEdge> buildGraph(double[] distances)
+	{
+		Graph<Integer, DefaultWeightedEdge> graph = GraphTypeBuilder.<Integer, DefaultWeightedEdge>undirected()
+																	 .allowingMultipleEdges(false)
+																	 .allowingSelfLoops(false)
+																	 .weighted(true)
+																	 .edgeClass(DefaultWeightedEdge.class)
+																	 .buildGraph();
+		int n = this.districtIds.length;
+		Integer[] vertices = new Integer[n];
+
+		for(int i=0; i<n; i++)
+		{
+			vertices[i] = this.districtIds[i];
+			graph.addVertex(vertices[i]);
+		}
+
+		for(int i=0; i<n; i++)
+		{
+			int offset = i * n;
+
+			for(int j=i+1; j<n; j++)
+			{
+				double distance = distances[offset + j];
+				if(distance == Double.POSITIVE_INFINITY) continue;
+
+				DefaultWeightedEdge edge = graph.addEdge(vertices[i], vertices[j]);
+				graph.setEdgeWeight(edge, distance);
+			}
+		}
+
+		return graph;
+	}
+}
@@ -0,0 +1,184 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jgrapht.Graph;
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.builder.GraphTypeBuilder;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.simulation.DistanceMatrix;
+import it.polito.tdp.simulation.VertexLocator;
+
+/**
+ * Everything that is built for a year of crimes: the graph (of districts, or of finer
+ * vertices such as neighbourhoods and grid cells), its distance matrix, the number of crimes
+ * of every vertex and how crimes are located on the vertices. Not modified after construction,
+ * so it can be built on a background thread and shared.
+ * <p>
+ * District networks also keep the running centres of their districts: crimes added to them
+ * (see DistrictCentroids) are reflected by refreshed(), which returns a new network where only
+ * the edges of the districts whose centre moved are re-weighted.
+ */
+public class DistrictNetwork
+{
+	private final Graph<Integer, DefaultWeightedEdge> graph;
+	private final DistanceMatrix distances;
+	private final Map<Integer, Integer> numOfCrimesByDistrict;
+	private final VertexLocator vertexLocator;
+	private final DistrictCentroids centroids;		//null for the sparse networks
+
+
+	private DistrictNetwork(Graph<Integer, DefaultWeightedEdge> graph, DistanceMatrix distances,
+			Map<Integer, Integer> numOfCrimesByDistrict, VertexLocator vertexLocator, DistrictCentroids centroids)
+	{
+		this.graph = graph;
+		this.distances = distances;
+		this.numOfCrimesByDistrict = Collections.unmodifiableMap(new HashMap<>(numOfCrimesByDistrict));
+		this.vertexLocator = vertexLocator;
+		this.centroids = centroids;
+	}
+
+	public static DistrictNetwork build(Collection<Integer> districtIDs, Map<Integer, LatLng> districtsGeographicCenters,
+			Map<Integer, Integer> numOfCrimesByDistrict, double speedInKmH)
+	{
+		//pairwise distances from primitive arrays (in parallel), then bulk-loaded into the graph
+		DistrictGraphBuilder builder = DistrictGraphBuilder.of(districtIDs, districtsGeographicCenters);
+		double[] districtDistances = builder.computeDistances();
+
+		Graph<Integer, DefaultWeightedEdge> graph = builder.buildGraph(districtDistances);
+		DistanceMatrix distances = DistanceMatrix.of(builder.getDistrictIds(), districtDistances, speedInKmH);
+		distances.getAdjacency();	//sorted here, possibly in the background, rather than on first use
+
+		DistrictCentroids centroids = DistrictCentroids.of(builder.getDistrictIds(), 
+				districtsGeographicCenters, numOfCrimesByDistrict);
+
+		return new DistrictNetwork(graph, distances, numOfCrimesByDistrict, VertexLocator.BY_DISTRICT, centroids);
+	}
+
+	/**
+	 * Sparse graph of the given neighbourhoods or grid cells. Travel times follow the shortest
+	 * paths of the sparse graph; crimes are located on their neighbourhood if it is a vertex,
+	 * otherwise on the vertex closest to their coordinates. Throws IllegalArgumentException if
+	 * there are more than DistanceMatrix.MAX_VERTICES vertices (about 24·n² bytes of matrices).
+	 */
+	static DistrictNetwork buildSparse(VertexClusters clusters, Sparsification sparsification, double speedInKmH)
+	{
+		int n = clusters.size();
+		if(n > DistanceMatrix.MAX_VERTICES)
+			throw new IllegalArgumentException(String.format("Error: %d %s need %,d distance matrix cells (%,d MB), "
+					+ "at most %d vertices are supported", n, clusters.getDescription(), (long)n * n,
+					24L * n * n / 1_000_000, DistanceMatrix.MAX_VERTICES));
+
+		SpatialGraphBuilder builder = SpatialGraphBuilder.of(clusters.getVertexIds(),
+				clusters.getLatitudes(), clusters.getLongitudes());
+
+		Graph<Integer, DefaultWeightedEdge> graph = builder.buildGraph(sparsification);
+		DistanceMatrix distances = DistanceMatrix.of(graph, speedInKmH);
+		distances.getAdjacency();
+
+		VertexLocator vertexLocator = event ->
+		{
+			Integer vertex = clusters.idOfNeighborhood(event.getNeighborhood_id());
+			return vertex != null ? vertex : builder.nearestVertex(event.getGeo_lat(), event.getGeo_lon());
+		};
+
+		return new DistrictNetwork(graph, distances, clusters.getNumOfCrimesByVertex(), vertexLocator, null);
+	}
+
+	/**
+	 * Adds a crime reported after the network was built to its district's centre and count;
+	 * returns false if the network has no such district (or is not a district network)
+	 */
+	boolean addCrime(Event event)
+	{
+		return this.centroids != null && this.centroids.add(event);
+	}
+
+	/**
+	 * This network if no centre moved since it was built, otherwise a network with the new
+	 * centres and counts. Only the rows and columns of the moved districts are recomputed: their
+	 * edges are re-weighted (or added, for districts with their first crime) in a copy of the
+	 * graph, so this network is left as it is. The adjacency is sorted again on first use.
+	 */
+	DistrictNetwork refreshed()
+	{
+		if(this.centroids == null) return this;
+
+		synchronized(this.centroids)
+		{
+			if(!this.centroids.hasMoved()) return this;
+
+			int[] moved = this.centroids.takeMoved();
+			GreatCircle centers = this.centroids.centers();
+			int n = centers.size();
+			double[][] rows = new double[moved.length][n];
+			Graph<Integer, DefaultWeightedEdge> graph = copyOf(this.graph);
+
+			for(int k=0; k<moved.length; k++)
+			{
+				int i = moved[k];
+				Integer vertex = this.distances.districtAt(i);
+
+				for(int j=0; j<n; j++)
+				{
+					rows[k][j] = j == i ? 0.0 : centers.distanceKm(i, j);
+					if(j == i || rows[k][j] == Double.POSITIVE_INFINITY) continue;
+
+					Integer other = this.distances.districtAt(j);
+					DefaultWeightedEdge edge = graph.getEdge(vertex, other);
+					if(edge == null) edge = graph.addEdge(vertex, other);
+
+					graph.setEdgeWeight(edge, rows[k][j]);
+				}
+			}
+
+			DistanceMatrix distances = this.distances.withDistancesOf(moved, rows);
+
+			return new DistrictNetwork(graph, distances, this.centroids.getNumOfCrimesByDistrict(), 
+					this.vertexLocator, this.centroids);
+		}
+	}
+
+	//new edges: a DefaultWeightedEdge holds its weight, so sharing them would share the weights
+	private static Graph<Integer, DefaultWeightedEdge> copyOf(Graph<Integer, DefaultWeightedEdge> graph)
+	{
+		Graph<Integer, DefaultWeightedEdge> copy = GraphTypeBuilder.<Integer, DefaultWeightedEdge>undirected()
+																  .allowingMultipleEdges(false)
+																  .allowingSelfLoops(false)
+																  .weighted(true)
+																  .edgeClass(DefaultWeightedEdge.class)
+																  .buildGraph();
+		Graphs.addAllVertices(copy, graph.vertexSet());
+
+		for(DefaultWeightedEdge edge : graph.edgeSet())
+			Graphs.addEdge(copy, graph.getEdgeSource(edge), graph.getEdgeTarget(edge), graph.getEdgeWeight(edge));
+
+		return copy;
+	}
+
+	public Graph<Integer, DefaultWeightedEdge> getGraph()
+	{
+		return this.graph;
+	}
+
+	public DistanceMatrix getDistanceMatrix()
+	{
+		return this.distances;
+	}
+
+	public Map<Integer, Integer> getNumOfCrimesByDistrict()
+	{
+		return this.numOfCrimesByDistrict;
+	}
+
+	public VertexLocator getVertexLocator()
+	{
+		return this.vertexLocator;
+	}
+}
@@ -4,22 +4,35 @@ import java.time.LocalDateTime;
 
 import it.polito.tdp.simulation.CrimeEvent;
 
+/**
+ * A row of the events table, kept compact because a year is hundreds of thousands of them:
+ * numbers are primitive fields (NO_VALUE stands for a null column), the timestamp is only
+ * kept by CrimeEvent, and the low-cardinality strings are codes of the shared symbol tables
+ * below. The getters still return the boxed values and the strings.
+ */
 public class Event extends CrimeEvent
 {	
-	private Long incident_id;
-	private Integer offense_code;
-	private Integer offense_code_extension;
-	private String offense_type_id;
-	private String offense_category_id;
-	private LocalDateTime reported_date;
-	private String incident_address;
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+	
+	public static final SymbolTable OFFENSE_TYPES = new SymbolTable();
+	public static final SymbolTable OFFENSE_CATEGORIES = new SymbolTable();
+	public static final SymbolTable NEIGHBORHOODS = new SymbolTable();
+	
+	//is_crime and is_traffic: a "known" bit and a value bit each
+	private static final byte CRIME_KNOWN = 1, CRIME = 2, TRAFFIC_KNOWN = 4, TRAFFIC = 8;
+	
+	private long incident_id;
+	private int offense_code;
+	private int offense_code_extension;
+	private int offense_type_code;
+	private int offense_category_code;
+	private String incident_address;	//not encoded: almost every address is a different string
 	private double geo_lon;
 	private double geo_lat;
-	private Integer district_id;
-	private Integer precinct_id;
-	private String neighborhood_id;
-	private Integer is_crime;
-	private Integer is_traffic;
+	private int district_id;
+	private int precinct_id;
+	private int neighborhood_code;
+	private byte flags;
 	
 	public Event(Long incident_id, Integer offense_code, Integer offense_code_extension, String offense_type_id,
 			String offense_category_id, LocalDateTime reported_date, String incident_address, double geo_lon,
@@ -27,57 +40,77 @@ public class Event extends CrimeEvent
 			Integer is_traffic) 
 	{
 		super(reported_date);
-		this.incident_id = incident_id;
-		this.offense_code = offense_code;
-		this.offense_code_extension = offense_code_extension;
-		this.offense_type_id = offense_type_id;
-		this.offense_category_id = offense_category_id;
-		this.reported_date = reported_date;
+		this.setIncident_id(incident_id);
+		this.setOffense_code(offense_code);
+		this.setOffense_code_extension(offense_code_extension);
+		this.setOffense_type_id(offense_type_id);
+		this.setOffense_category_id(offense_category_id);
 		this.incident_address = incident_address;
 		this.geo_lon = geo_lon;
 		this.geo_lat = geo_lat;
-		this.district_id = district_id;
-		this.precinct_id = precinct_id;
-		this.neighborhood_id = neighborhood_id;
-		this.is_crime = is_crime;
-		this.is_traffic = is_traffic;
+		this.setDistrict_id(district_id);
+		this.setPrecinct_id(precinct_id);
+		this.setNeighborhood_id(neighborhood_id);
+		this.setIs_crime(is_crime);
+		this.setIs_traffic(is_traffic);
+	}
+	
+	/**
+	 * An event with only the columns an EventStore keeps, as it keeps them: codes of the symbol
+	 * tables above and NO_VALUE for a missing district. The other columns are null.
+	 */
+	public static Event ofCodes(long incident_id, int offense_category_code, LocalDateTime reported_date,
+			double geo_lon, double geo_lat, int district_id, int neighborhood_code)
+	{
+		Event event = new Event(incident_id, null, null, null, null, reported_date, null, geo_lon, geo_lat, 
+				null, null, null, null, null);
+		event.offense_category_code = offense_category_code;
+		event.district_id = district_id;
+		event.neighborhood_code = neighborhood_code;
+		return event;
 	}
 	
 	public Long getIncident_id() {
 		return incident_id;
 	}
 	public void setIncident_id(Long incident_id) {
-		this.incident_id = incident_id;
+		this.incident_id = incident_id == null ? 0L : incident_id;
 	}
 	public Integer getOffense_code() {
-		return offense_code;
+		return box(offense_code);
 	}
 	public void setOffense_code(Integer offense_code) {
-		this.offense_code = offense_code;
+		this.offense_code = unbox(offense_code);
 	}
 	public Integer getOffense_code_extension() {
-		return offense_code_extension;
+		return box(offense_code_extension);
 	}
 	public void setOffense_code_extension(Integer offense_code_extension) {
-		this.offense_code_extension = offense_code_extension;
+		this.offense_code_extension = unbox(offense_code_extension);
 	}
 	public String getOffense_type_id() {
-		return offense_type_id;
+		return OFFENSE_TYPES.symbolOf(offense_type_code);
 	}
 	public void setOffense_type_id(String offense_type_id) {
-		this.offense_type_id = offense_type_id;
+		this.offense_type_code = OFFENSE_TYPES.codeOf(offense_type_id);
 	}
 	public String getOffense_category_id() {
-		return offense_category_id;
+		return OFFENSE_CATEGORIES.symbolOf(offense_category_code);
 	}
 	public void setOffense_category_id(String offense_category_id) {
-		this.offense_category_id = offense_category_id;
+		this.offense_category_code = OFFENSE_CATEGORIES.codeOf(offense_category_id);
+	}
+	/**
+	 * The code of the category in OFFENSE_CATEGORIES: compare it instead of the strings
+	 */
+	public int getOffense_category_code() {
+		return offense_category_code;
 	}
 	public LocalDateTime getReported_date() {
-		return reported_date;
+		return this.getTime();
 	}
 	public void setReported_date(LocalDateTime reported_date) {
-		this.reported_date = reported_date;
+		this.setTime(reported_date);
 	}
 	public String getIncident_address() {
 		return incident_address;
@@ -98,34 +131,66 @@ public class Event extends CrimeEvent
 		this.geo_lat = geo_lat;
 	}
 	public Integer getDistrict_id() {
-		return district_id;
+		return box(district_id);
 	}
 	public void setDistrict_id(Integer district_id) {
-		this.district_id = district_id;
+		this.district_id = unbox(district_id);
 	}
 	public Integer getPrecinct_id() {
-		return precinct_id;
+		return box(precinct_id);
 	}
 	public void setPrecinct_id(Integer precinct_id) {
-		this.precinct_id = precinct_id;
+		this.precinct_id = unbox(precinct_id);
 	}
 	public String getNeighborhood_id() {
-		return neighborhood_id;
+		return NEIGHBORHOODS.symbolOf(neighborhood_code);
 	}
 	public void setNeighborhood_id(String neighborhood_id) {
-		this.neighborhood_id = neighborhood_id;
+		this.neighborhood_code = NEIGHBORHOODS.codeOf(neighborhood_id);
+	}
+	/**
+	 * The code of the neighbourhood in NEIGHBORHOODS
+	 */
+	public int getNeighborhood_code() {
+		return neighborhood_code;
 	}
 	public Integer getIs_crime() {
-		return is_crime;
+		return getFlag(CRIME_KNOWN, CRIME);
 	}
 	public void setIs_crime(Integer is_crime) {
-		this.is_crime = is_crime;
+		setFlag(CRIME_KNOWN, CRIME, is_crime);
 	}
 	public Integer getIs_traffic() {
-		return is_traffic;
+		return getFlag(TRAFFIC_KNOWN, TRAFFIC);
 	}
 	public void setIs_traffic(Integer is_traffic) {
-		this.is_traffic = is_traffic;
+		setFlag(TRAFFIC_KNOWN, TRAFFIC, is_traffic);
+	}
+	
+	private static Integer box(int value)
+	{
+		return value == NO_VALUE ? null : value;
+	}
+	
+	private static int unbox(Integer value)
+	{
+		return value == null ? NO_VALUE : value;
+	}
+	
+	private Integer getFlag(byte known, byte bit)
+	{
+		if((this.flags & known) == 0) return null;
+		
+		return (this.flags & bit) != 0 ? 1 : 0;
+	}
+	
+	//the columns are 0/1: any other non-null value counts as 1
+	private void setFlag(byte known, byte bit, Integer value)
+	{
+		this.flags &= ~(known | bit);
+		
+		if(value != null)
+			this.flags |= value != 0 ? known | bit : known;
 	}
 
 	@Override
@@ -133,7 +198,7 @@ public class Event extends CrimeEvent
 	{
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((incident_id == null) ? 0 : incident_id.hashCode());
+		result = prime * result + Long.hashCode(incident_id);
 		return result;
 	}
 
@@ -147,20 +212,12 @@ public class Event extends CrimeEvent
 		if (getClass() != obj.getClass())
 			return false;
 		Event other = (Event) obj;
-		if (incident_id == null)
-		{
-			if (other.incident_id != null)
-				return false;
-		}
-		else
-			if (!incident_id.equals(other.incident_id))
-				return false;
-		return true;
+		return incident_id == other.incident_id;
 	}
 
 	@Override
 	public String toString() {
-		return "Event [incident_id=" + incident_id + ", offense_category_id=" + offense_category_id + ", reported_date="
-				+ reported_date + ", district_id=" + district_id + "]";
+		return "Event [incident_id=" + incident_id + ", offense_category_id=" + getOffense_category_id() + ", reported_date="
+				+ getReported_date() + ", district_id=" + getDistrict_id() + "]";
 	}
 }
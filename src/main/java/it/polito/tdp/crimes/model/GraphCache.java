@@ -0,0 +1,170 @@
+package it.polito.tdp.crimes.model;
+
+import java.time.Year;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of the district networks by year. Entries are futures, so a year
+ * that is being built in the background is not built twice: a get() for it waits for
+ * the build in progress. Failed builds are not cached. Networks whose district centres moved
+ * (see DistrictNetwork.refreshed()) are replaced by their refreshed version on get().
+ */
+class GraphCache
+{
+	private final int capacity;
+	private final Function<Year, DistrictNetwork> loader;
+	private final Executor executor;
+	private final LinkedHashMap<Year, CompletableFuture<DistrictNetwork>> entries;
+
+
+	GraphCache(int capacity, Function<Year, DistrictNetwork> loader, Executor executor)
+	{
+		if(capacity < 1)
+			throw new IllegalArgumentException("Error: graph cache capacity must be positive");
+
+		this.capacity = capacity;
+		this.loader = loader;
+		this.executor = executor;
+
+		//access ordered: the eldest entry is the least recently used one
+		this.entries = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Year, CompletableFuture<DistrictNetwork>> eldest)
+			{
+				return this.size() > GraphCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the (refreshed) network of the given year, building it on the calling thread
+	 * if it is neither cached nor being built in the background
+	 */
+	DistrictNetwork get(Year year)
+	{
+		CompletableFuture<DistrictNetwork> future;
+		boolean load = false;
+
+		synchronized(this)
+		{
+			future = this.entries.get(year);
+
+			if(future == null)
+			{
+				future = new CompletableFuture<>();
+				this.entries.put(year, future);
+				load = true;
+			}
+		}
+
+		if(load)
+			this.load(year, future);
+
+		DistrictNetwork network;
+		try
+		{
+			network = future.join();
+		}
+		catch(CompletionException ce)
+		{
+			if(ce.getCause() instanceof RuntimeException)
+				throw (RuntimeException)ce.getCause();
+
+			throw ce;
+		}
+
+		synchronized(this)
+		{
+			if(this.entries.get(year) == future)
+			{
+				DistrictNetwork refreshed = network.refreshed();
+				if(refreshed != network)
+					this.entries.put(year, CompletableFuture.completedFuture(refreshed));
+
+				return refreshed;
+			}
+		}
+
+		//replaced meanwhile by another refresh (or evicted): start again from the current entry
+		return this.get(year);
+	}
+
+	/**
+	 * The network of the given year if it is cached and built, otherwise null (without waiting)
+	 */
+	synchronized DistrictNetwork getIfLoaded(Year year)
+	{
+		CompletableFuture<DistrictNetwork> future = this.entries.get(year);
+
+		if(future == null || !future.isDone() || future.isCompletedExceptionally())
+			return null;
+
+		return future.join();
+	}
+
+	/**
+	 * Builds in the background the networks of the given years that are not cached yet.
+	 * Only the first 'capacity' years are considered, the others would just evict them.
+	 */
+	void precompute(Collection<Year> years)
+	{
+		int count = 0;
+
+		for(Year year : years)
+		{
+			if(count++ == this.capacity) break;
+
+			CompletableFuture<DistrictNetwork> future;
+
+			synchronized(this)
+			{
+				if(this.entries.containsKey(year)) continue;
+
+				future = new CompletableFuture<>();
+				this.entries.put(year, future);
+			}
+
+			this.executor.execute(() -> this.load(year, future));
+		}
+	}
+
+	/**
+	 * Drops the network of the given year, which is built again on the next get(). A build in
+	 * progress is not waited for: its result is discarded.
+	 */
+	synchronized void remove(Year year)
+	{
+		this.entries.remove(year);
+	}
+
+	synchronized void clear()
+	{
+		this.entries.clear();
+	}
+
+	private void load(Year year, CompletableFuture<DistrictNetwork> future)
+	{
+		try
+		{
+			future.complete(this.loader.apply(year));
+		}
+		catch(RuntimeException re)
+		{
+			synchronized(this)
+			{
+				this.entries.remove(year, future);
+			}
+
+			future.completeExceptionally(re);
+		}
+	}
+}
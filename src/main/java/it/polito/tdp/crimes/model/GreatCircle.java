@@ -0,0 +1,162 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.stream.IntStream;
+
+/**
+ * Batch great-circle distances (km) between points given as parallel arrays of latitudes
+ * and longitudes (degrees).
+ * <p>
+ * Every point is turned once into a unit vector on the sphere, so the distance between two
+ * points only needs the chord between their vectors: 2R·asin(chord / 2). This is the same
+ * value as the haversine formula of simplelatlng's LatLngTool (with the same earth radius),
+ * without any LatLng object and with one arcsine per pair instead of five trigonometric calls.
+ */
+public class GreatCircle
+{
+	//same mean earth radius used by simplelatlng's LatLngTool
+	static final double EARTH_RADIUS_KM = 6371.009;
+
+	//below this size the rows are computed sequentially: forking costs more than it saves
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	//unit vectors, NaN if the point has no coordinates
+	final double[] xs;
+	final double[] ys;
+	final double[] zs;
+
+
+	private GreatCircle(int n)
+	{
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.zs = new double[n];
+	}
+
+	/**
+	 * Point i is at (latitudes[i], longitudes[i]), in degrees: NaN coordinates mark a missing
+	 * point, which is at +Infinity from all the others
+	 */
+	public static GreatCircle of(double[] latitudes, double[] longitudes)
+	{
+		if(latitudes.length != longitudes.length)
+			throw new IllegalArgumentException("Error: latitudes and longitudes do not match");
+
+		GreatCircle points = new GreatCircle(latitudes.length);
+
+		for(int i=0; i<latitudes.length; i++)
+		{
+			double latitude = Math.toRadians(latitudes[i]);
+			double longitude = Math.toRadians(longitudes[i]);
+			double cosLatitude = Math.cos(latitude);
+
+			points.xs[i] = cosLatitude * Math.cos(longitude);
+			points.ys[i] = cosLatitude * Math.sin(longitude);
+			points.zs[i] = Math.sin(latitude);
+		}
+
+		return points;
+	}
+
+	/**
+	 * The unit vector (x, y, z) of a single point given in degrees
+	 */
+	static double[] unitVector(double latitude, double longitude)
+	{
+		double cosLatitude = Math.cos(Math.toRadians(latitude));
+
+		return new double[] {cosLatitude * Math.cos(Math.toRadians(longitude)),
+							 cosLatitude * Math.sin(Math.toRadians(longitude)),
+							 Math.sin(Math.toRadians(latitude))};
+	}
+
+	public int size()
+	{
+		return this.xs.length;
+	}
+
+	public boolean isMissing(int i)
+	{
+		return Double.isNaN(this.xs[i]);
+	}
+
+	public double distanceKm(int i, int j)
+	{
+		double dx = this.xs[i] - this.xs[j];
+		double dy = this.ys[i] - this.ys[j];
+		double dz = this.zs[i] - this.zs[j];
+		double squaredChord = dx * dx + dy * dy + dz * dz;
+
+		if(Double.isNaN(squaredChord))
+			return Double.POSITIVE_INFINITY;
+
+		return chordToKm(squaredChord);
+	}
+
+	/**
+	 * Dense row-major matrix of the distances between all the points: 0 on the diagonal
+	 * and +Infinity from the missing points. Only the upper triangle is computed, in
+	 * parallel over the rows, and then mirrored.
+	 */
+	public double[] distanceMatrix()
+	{
+		int n = this.xs.length;
+		double[] distances = new double[n * n];
+
+		//row i and row n-1-i together, so that every task gets n-1 pairs of the triangle
+		IntStream rowPairs = IntStream.range(0, (n + 1) / 2);
+		if(n >= PARALLEL_THRESHOLD) rowPairs = rowPairs.parallel();
+
+		rowPairs.forEach(i ->
+		{
+			this.computeUpperRow(distances, i);
+			if(n - 1 - i != i) this.computeUpperRow(distances, n - 1 - i);
+		});
+
+		//mirror: every row fills its own (contiguous) lower part
+		IntStream rows = IntStream.range(1, n);
+		if(n >= PARALLEL_THRESHOLD) rows = rows.parallel();
+
+		rows.forEach(i ->
+		{
+			int offset = i * n;
+			for(int j=0; j<i; j++)
+				distances[offset + j] = distances[j * n + i];
+		});
+
+		return distances;
+	}
+
+	private void computeUpperRow(double[] distances, int i)
+	{
+		int n = this.xs.length;
+		int offset = i * n;
+
+		double x = this.xs[i];
+		double y = this.ys[i];
+		double z = this.zs[i];
+
+		distances[offset + i] = 0.0;
+
+		for(int j=i+1; j<n; j++)
+		{
+			double dx = x - this.xs[j];
+			double dy = y - this.ys[j];
+			double dz = z - this.zs[j];
+			double squaredChord = dx * dx + dy * dy + dz * dz;
+
+			distances[offset + j] = Double.isNaN(squaredChord) ? Double.POSITIVE_INFINITY : chordToKm(squaredChord);
+		}
+	}
+
+	//the chord between two unit vectors (squared) and the great-circle distance, both ways
+	static double chordToKm(double squaredChord)
+	{
+		return 2.0 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, 0.5 * Math.sqrt(squaredChord)));
+	}
+
+	static double kmToChord(double km)
+	{
+		double angle = Math.min(km / EARTH_RADIUS_KM, Math.PI);
+		return 2.0 * Math.sin(angle / 2.0);
+	}
+}
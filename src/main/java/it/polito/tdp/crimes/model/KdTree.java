@@ -0,0 +1,271 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Static 3-d tree over points in space (e.g. the unit vectors of GreatCircle, whose straight
+ * distances grow with the great-circle ones), stored implicitly: the median of every range of
+ * the points array is the node splitting that range, on the coordinates x, y, z in turn.
+ * Queries do not modify the tree, so they can run concurrently.
+ */
+class KdTree
+{
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] zs;
+	private final int[] points;		//point indices, in tree order
+
+
+	KdTree(double[] xs, double[] ys, double[] zs)
+	{
+		int n = xs.length;
+
+		this.xs = xs;
+		this.ys = ys;
+		this.zs = zs;
+		this.points = new int[n];
+		for(int i=0; i<n; i++)
+			this.points[i] = i;
+
+		this.build(0, n, 0);
+	}
+
+	int size()
+	{
+		return this.points.length;
+	}
+
+	int nearest(double x, double y, double z)
+	{
+		return this.nearest(x, y, z, null);
+	}
+
+	/**
+	 * The point closest to (x, y, z) among the ones accepted by the filter (all if null),
+	 * or -1 if there is none
+	 */
+	int nearest(double x, double y, double z, IntPredicate filter)
+	{
+		Nearest best = new Nearest();
+		this.nearest(0, this.points.length, 0, x, y, z, filter, best);
+		return best.point;
+	}
+
+	/**
+	 * Puts the (at most) k points closest to (x, y, z) into points, sorted by distance, and their
+	 * squared distances into squaredDistances. Returns how many points have been found.
+	 */
+	int kNearest(double x, double y, double z, int k, int[] points, double[] squaredDistances)
+	{
+		int capacity = Math.min(k, Math.min(points.length, squaredDistances.length));
+		if(capacity <= 0) return 0;
+
+		//max-heap of the best points found so far
+		int count = this.kNearest(0, this.points.length, 0, x, y, z, capacity, points, squaredDistances, 0);
+
+		//heap sort, in place
+		for(int last=count-1; last>0; last--)
+		{
+			swap(points, squaredDistances, 0, last);
+			siftDown(points, squaredDistances, 0, last);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Calls action for every point within the given distance from (x, y, z)
+	 */
+	void withinRadius(double x, double y, double z, double radius, IntConsumer action)
+	{
+		this.withinRadius(0, this.points.length, 0, x, y, z, radius, radius * radius, action);
+	}
+
+	private void build(int from, int to, int depth)
+	{
+		if(to - from < 2) return;
+
+		int middle = (from + to) >>> 1;
+		this.select(from, to - 1, middle, this.axis(depth));
+
+		this.build(from, middle, depth + 1);
+		this.build(middle + 1, to, depth + 1);
+	}
+
+	private double[] axis(int depth)
+	{
+		switch(depth % 3)
+		{
+			case 0: return this.xs;
+			case 1: return this.ys;
+			default: return this.zs;
+		}
+	}
+
+	//quickselect: puts the k-th point by coordinate in position k, smaller ones before it
+	private void select(int left, int right, int k, double[] coordinates)
+	{
+		while(left < right)
+		{
+			double pivot = coordinates[this.points[(left + right) >>> 1]];
+			int i = left;
+			int j = right;
+
+			while(i <= j)
+			{
+				while(coordinates[this.points[i]] < pivot) i++;
+				while(coordinates[this.points[j]] > pivot) j--;
+
+				if(i <= j)
+				{
+					int tmp = this.points[i];
+					this.points[i++] = this.points[j];
+					this.points[j--] = tmp;
+				}
+			}
+
+			if(k <= j) right = j;
+			else if(k >= i) left = i;
+			else return;
+		}
+	}
+
+	private void nearest(int from, int to, int depth, double x, double y, double z, IntPredicate filter, Nearest best)
+	{
+		if(from >= to) return;
+
+		int middle = (from + to) >>> 1;
+		int point = this.points[middle];
+		double dx = x - this.xs[point];
+		double dy = y - this.ys[point];
+		double dz = z - this.zs[point];
+
+		double squaredDistance = dx * dx + dy * dy + dz * dz;
+		if(squaredDistance < best.squaredDistance && (filter == null || filter.test(point)))
+		{
+			best.squaredDistance = squaredDistance;
+			best.point = point;
+		}
+
+		double delta = depth % 3 == 0 ? dx : (depth % 3 == 1 ? dy : dz);
+		boolean leftFirst = delta < 0;
+
+		//the side of (x, y, z) first, the other only if it can hold a closer point
+		if(leftFirst) this.nearest(from, middle, depth + 1, x, y, z, filter, best);
+		else this.nearest(middle + 1, to, depth + 1, x, y, z, filter, best);
+
+		if(delta * delta < best.squaredDistance)
+		{
+			if(leftFirst) this.nearest(middle + 1, to, depth + 1, x, y, z, filter, best);
+			else this.nearest(from, middle, depth + 1, x, y, z, filter, best);
+		}
+	}
+
+	private int kNearest(int from, int to, int depth, double x, double y, double z, int capacity,
+			int[] heap, double[] keys, int count)
+	{
+		if(from >= to) return count;
+
+		int middle = (from + to) >>> 1;
+		int point = this.points[middle];
+		double dx = x - this.xs[point];
+		double dy = y - this.ys[point];
+		double dz = z - this.zs[point];
+		double squaredDistance = dx * dx + dy * dy + dz * dz;
+
+		if(count < capacity)
+		{
+			heap[count] = point;
+			keys[count] = squaredDistance;
+			siftUp(heap, keys, count++);
+		}
+		else if(squaredDistance < keys[0])
+		{
+			heap[0] = point;
+			keys[0] = squaredDistance;
+			siftDown(heap, keys, 0, count);
+		}
+
+		double delta = depth % 3 == 0 ? dx : (depth % 3 == 1 ? dy : dz);
+		boolean leftFirst = delta < 0;
+
+		if(leftFirst) count = this.kNearest(from, middle, depth + 1, x, y, z, capacity, heap, keys, count);
+		else count = this.kNearest(middle + 1, to, depth + 1, x, y, z, capacity, heap, keys, count);
+
+		if(count < capacity || delta * delta < keys[0])
+		{
+			if(leftFirst) count = this.kNearest(middle + 1, to, depth + 1, x, y, z, capacity, heap, keys, count);
+			else count = this.kNearest(from, middle, depth + 1, x, y, z, capacity, heap, keys, count);
+		}
+
+		return count;
+	}
+
+	private void withinRadius(int from, int to, int depth, double x, double y, double z, double radius,
+			double squaredRadius, IntConsumer action)
+	{
+		if(from >= to) return;
+
+		int middle = (from + to) >>> 1;
+		int point = this.points[middle];
+		double dx = x - this.xs[point];
+		double dy = y - this.ys[point];
+		double dz = z - this.zs[point];
+
+		if(dx * dx + dy * dy + dz * dz <= squaredRadius)
+			action.accept(point);
+
+		double delta = depth % 3 == 0 ? dx : (depth % 3 == 1 ? dy : dz);
+
+		//left points have coordinate <= the node's one, right points >= it
+		if(delta <= radius) this.withinRadius(from, middle, depth + 1, x, y, z, radius, squaredRadius, action);
+		if(delta >= -radius) this.withinRadius(middle + 1, to, depth + 1, x, y, z, radius, squaredRadius, action);
+	}
+
+	private static void siftUp(int[] heap, double[] keys, int position)
+	{
+		while(position > 0)
+		{
+			int parent = (position - 1) >>> 1;
+			if(keys[parent] >= keys[position]) break;
+
+			swap(heap, keys, parent, position);
+			position = parent;
+		}
+	}
+
+	private static void siftDown(int[] heap, double[] keys, int position, int size)
+	{
+		while(true)
+		{
+			int child = 2 * position + 1;
+			if(child >= size) break;
+
+			if(child + 1 < size && keys[child + 1] > keys[child])
+				child++;
+
+			if(keys[position] >= keys[child]) break;
+
+			swap(heap, keys, position, child);
+			position = child;
+		}
+	}
+
+	private static void swap(int[] heap, double[] keys, int i, int j)
+	{
+		int point = heap[i];
+		heap[i] = heap[j];
+		heap[j] = point;
+
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+	}
+
+	private static class Nearest
+	{
+		int point = -1;
+		double squaredDistance = Double.POSITIVE_INFINITY;
+	}
+}
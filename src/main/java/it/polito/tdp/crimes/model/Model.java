@@ -2,134 +2,442 @@ package it.polito.tdp.crimes.model;
 
 import java.time.LocalDate;
 import java.time.Year;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import org.jgrapht.Graph;
-import org.jgrapht.Graphs;
 import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.builder.GraphTypeBuilder;
 
 import com.javadocmd.simplelatlng.LatLng;
-import com.javadocmd.simplelatlng.LatLngTool;
-import com.javadocmd.simplelatlng.util.LengthUnit;
 
+import it.polito.tdp.crimes.db.EventCursor;
+import it.polito.tdp.crimes.db.EventSource;
 import it.polito.tdp.crimes.db.EventsDao;
+import it.polito.tdp.simulation.DispatchStrategy;
+import it.polito.tdp.simulation.DistanceMatrix;
+import it.polito.tdp.simulation.DistrictAdjacency;
+import it.polito.tdp.simulation.ReplicationStatistics;
+import it.polito.tdp.simulation.SimulationMetrics;
+import it.polito.tdp.simulation.SimulationMonitor;
 import it.polito.tdp.simulation.Simulator;
+import it.polito.tdp.simulation.VertexLocator;
 
 public class Model 
 {
-	private final EventsDao dao;
+	private static final double SPEED_IN_KM_H = 60.0;
+	private static final int GRAPH_CACHE_SIZE = 8;	//years
+	
+	private final Supplier<? extends EventSource> eventSourceSupplier;
+	private final Object eventSourceLock = new Object();	//not the model: graphs are built under its lock
+	private volatile EventSource dao;	//from the supplier on first use, replaced by addCrimeEvents()
 	private Graph<Integer, DefaultWeightedEdge> graph;
-	private List<Year> allYears;
+	private DistanceMatrix distances;
+	private volatile List<Year> allYears;
 	private Map<Integer, Integer> numOfCrimesByDistrict;
-	private final Simulator simulator;
+	private VertexLocator vertexLocator = VertexLocator.BY_DISTRICT;
+	private Simulator simulator;
+	private boolean telemetryEnabled;
+	private final SimulationMonitor monitor;
+	private final GraphCache graphCache;
+	private volatile Collection<Integer> allDistrictIDs;
+	private Year graphYear;		//year of the current graph, null if it is not a cached district graph
 
 	
 	public Model() 
 	{
-		this.dao = new EventsDao();
-		this.simulator = new Simulator();
+		this(new EventsDao());
+	}
+	
+	public Model(EventSource eventSource)
+	{
+		this(() -> eventSource);
+	}
+	
+	/**
+	 * A model whose event source is obtained on first use, e.g. an EventStore still to be loaded:
+	 * see openEventSource()
+	 */
+	public Model(Supplier<? extends EventSource> eventSourceSupplier)
+	{
+		this.eventSourceSupplier = eventSourceSupplier;
+		this.monitor = new SimulationMonitor();
+		this.graphCache = new GraphCache(GRAPH_CACHE_SIZE, this::loadNetwork, 
+				Executors.newSingleThreadExecutor(Model::newPrecomputeThread));
+	}
+	
+	/**
+	 * Obtains the event source from the supplier, if it was not yet. Every query does it on
+	 * first use, but it may take long (loading a store), so it is better called off the user
+	 * interface thread before any other operation.
+	 */
+	public void openEventSource()
+	{
+		this.getEventSource();
+	}
+	
+	private EventSource getEventSource()
+	{
+		EventSource dao = this.dao;
+		
+		if(dao == null)
+		{
+			synchronized(this.eventSourceLock)
+			{
+				dao = this.dao;
+				if(dao == null)
+					this.dao = dao = this.eventSourceSupplier.get();
+			}
+		}
+		
+		return dao;
 	}
 	
 	public List<Year> getAllYears()
 	{
-		if(this.allYears == null)
-			this.allYears = this.dao.getAllYears();
+		List<Year> allYears = this.allYears;
+		
+		if(allYears == null)
+			this.allYears = allYears = this.getEventSource().getAllYears();
 		
-		return this.allYears;
+		return allYears;
 	}
 	
+	public Collection<Integer> getAllDistrictIDs()
+	{
+		Collection<Integer> districtIDs = this.allDistrictIDs;
+		
+		if(districtIDs == null)
+			this.allDistrictIDs = districtIDs = this.getEventSource().getAllDistrictIDs();
+		
+		return districtIDs;
+	}
+	
+	/**
+	 * Starts building the graphs of all the years in the background, so that
+	 * createGraph() does not have to wait for the database when the year changes
+	 */
+	public void precomputeGraphs()
+	{
+		this.graphCache.precompute(this.getAllYears());
+	}
+	
+	/**
+	 * Selects the graph of the given year, which is built only if it is not cached
+	 */
 	public void createGraph(Year selectedYear)
 	{
-		this.graph = GraphTypeBuilder.<Integer, DefaultWeightedEdge>undirected()
-									 .allowingMultipleEdges(false)
-									 .allowingSelfLoops(false)
-									 .weighted(true)
-									 .edgeClass(DefaultWeightedEdge.class)
-									 .buildGraph();
+		this.createGraph(selectedYear, () -> {});
+	}
+	
+	/**
+	 * As createGraph(Year), but beforeChange is run once the graph is built, before it is
+	 * selected: if it throws, the model is left as it was (the graph stays cached)
+	 */
+	void createGraph(Year selectedYear, Runnable beforeChange)
+	{
+		DistrictNetwork network = this.graphCache.get(selectedYear);
 		
-		//add vertices
-		Collection<Integer> districtIDs = this.dao.getAllDistrictIDs();
-		Graphs.addAllVertices(this.graph, districtIDs);
+		beforeChange.run();
+		this.useNetwork(network);
+		this.graphYear = selectedYear;
+	}
+	
+	public void createGraph(Collection<Integer> districtIDs, Map<Integer, LatLng> districtsGeographicCenters,
+			Map<Integer, Integer> numOfCrimesByDistrict)
+	{
+		this.useNetwork(DistrictNetwork.build(districtIDs, districtsGeographicCenters, 
+				numOfCrimesByDistrict, SPEED_IN_KM_H));
+	}
+	
+	/**
+	 * Adds crimes reported after the events were read (e.g. appended to the table during the
+	 * day). The event source is told about them (see EventSource.withCrimeEvents()), so later
+	 * simulations, sweeps and graphs see them. Cached district graphs are not built again: the
+	 * crimes are added to the running centres and counts of their districts, and the current
+	 * graph is re-weighted at once, only around the districts whose centre moved; the other
+	 * cached years on their next createGraph(). Graphs still being built, or without the crime's
+	 * district, are dropped from the cache and built again when needed.
+	 * Returns the number of crimes added to a cached graph.
+	 */
+	public int addCrimeEvents(Collection<Event> newEvents)
+	{
+		EventSource current = this.getEventSource();
+		EventSource dao = current.withCrimeEvents(newEvents);
 		
+		if(dao != current)
+		{
+			this.dao = dao;
+			this.allYears = null;
+			this.allDistrictIDs = null;
+		}
 		
-		this.numOfCrimesByDistrict = new HashMap<>();
-		//add edges
-		Map<Integer, LatLng> districtsGeographicCenters = 
-				this.dao.getGeographicCenters(selectedYear, this.numOfCrimesByDistrict);
+		int added = 0;
 		
-		for(var pair1 : districtsGeographicCenters.entrySet())
+		for(Event event : newEvents)
 		{
-			int districtId1 = pair1.getKey();
-			LatLng coord1 = pair1.getValue();
+			if(event.getReported_date() == null) continue;
 			
-			for(var pair2 : districtsGeographicCenters.entrySet())
-			{
-				int districtId2 = pair2.getKey();
-				LatLng coord2 = pair2.getValue();
-				
-				if(!this.graph.containsVertex(districtId1) || !this.graph.containsVertex(districtId2))
-					throw new RuntimeException("Error: node not found in graph");	//for debug
-				
-				if(districtId1 == districtId2 || this.graph.containsEdge(districtId1, districtId2))
-					continue;	//no edge to create
-					
-				double distance = LatLngTool.distance(coord1, coord2, LengthUnit.KILOMETER);
-				Graphs.addEdge(this.graph, districtId1, districtId2, distance);
-			}
-		}		
+			Year year = Year.from(event.getReported_date());
+			DistrictNetwork network = this.graphCache.getIfLoaded(year);
+			
+			if(network != null && network.addCrime(event))
+				added++;
+			else
+				this.graphCache.remove(year);
+		}
+		
+		if(this.graphYear != null)
+			this.createGraph(this.graphYear);
+		
+		return added;
+	}
+	
+	/**
+	 * Creates a sparse graph of the neighbourhoods of the given year's crimes, 
+	 * linked according to the sparsification (not cached)
+	 */
+	public void createNeighborhoodGraph(Year selectedYear, Sparsification sparsification)
+	{
+		try(EventCursor events = this.openYearCursor(selectedYear))
+		{
+			this.useNetwork(DistrictNetwork.buildSparse(VertexClusters.byNeighborhood(events), 
+					sparsification, SPEED_IN_KM_H));
+		}
+	}
+	
+	/**
+	 * Creates a sparse graph of the square cells (cellSizeKm per side) holding the given 
+	 * year's crimes, linked according to the sparsification (not cached)
+	 */
+	public void createGridGraph(Year selectedYear, double cellSizeKm, Sparsification sparsification)
+	{
+		try(EventCursor events = this.openYearCursor(selectedYear))
+		{
+			this.useNetwork(DistrictNetwork.buildSparse(VertexClusters.byGridCell(events, cellSizeKm), 
+					sparsification, SPEED_IN_KM_H));
+		}
+	}
+	
+	private EventCursor openYearCursor(Year year)
+	{
+		return this.getEventSource().openCrimeEventsCursor(year.atDay(1).atStartOfDay(), 
+				year.plusYears(1).atDay(1).atStartOfDay());
+	}
+	
+	public void clearGraphCache()
+	{
+		this.graphCache.clear();
+	}
+	
+	//runs on the precompute thread too
+	private DistrictNetwork loadNetwork(Year year)
+	{
+		Collection<Integer> districtIDs = this.getAllDistrictIDs();
+		Map<Integer, Integer> numOfCrimesByDistrict = new HashMap<>();
+		Map<Integer, LatLng> districtsGeographicCenters = 
+				this.getEventSource().getGeographicCenters(year, numOfCrimesByDistrict);
+		
+		return DistrictNetwork.build(districtIDs, districtsGeographicCenters, numOfCrimesByDistrict, SPEED_IN_KM_H);
+	}
+	
+	private void useNetwork(DistrictNetwork network)
+	{
+		this.graph = network.getGraph();
+		this.distances = network.getDistanceMatrix();
+		this.numOfCrimesByDistrict = network.getNumOfCrimesByDistrict();
+		this.vertexLocator = network.getVertexLocator();
+		this.graphYear = null;
+	}
+	
+	private static Thread newPrecomputeThread(Runnable task)
+	{
+		Thread thread = new Thread(task, "graph-precompute");
+		thread.setDaemon(true);	//must not keep the application alive
+		return thread;
+	}
+
+	public DistanceMatrix getDistanceMatrix()
+	{
+		return this.distances;
 	}
 
 	public int getNumVertices() { return this.graph.vertexSet().size(); }
 	public int getNumEdges() { return this.graph.edgeSet().size(); }
 	
-	public TreeMap<Integer, Map<Integer, Double>> getOrderedDistrictsAdjacences()
+	/**
+	 * The districts' neighbours sorted by distance, or null if no graph has been created
+	 */
+	public DistrictAdjacency getDistrictAdjacency()
+	{
+		if(this.distances == null) return null;
+		
+		return this.distances.getAdjacency();
+	}
+	
+	public boolean isGraphCreated()
+	{
+		return this.graph != null;
+	}
+	
+	public boolean runSimulation(int numAgents, LocalDate date)
+	{
+		return this.runSimulation(numAgents, date, DispatchStrategy.NEAREST_AVAILABLE);
+	}
+	
+	public boolean runSimulation(int numAgents, LocalDate date, DispatchStrategy dispatchStrategy)
+	{
+		return this.runSimulation(numAgents, date, dispatchStrategy, () -> {});
+	}
+	
+	/**
+	 * As runSimulation(int, LocalDate, DispatchStrategy), but beforeChange is run once the
+	 * events are read, before the simulation starts: if it throws, the model is left as it was
+	 */
+	boolean runSimulation(int numAgents, LocalDate date, DispatchStrategy dispatchStrategy, Runnable beforeChange)
 	{
-		if(this.graph == null) return null;
+		this.checkSimulationInput(numAgents, date);
 		
-		TreeMap<Integer, Map<Integer, Double>> orderedMap = new TreeMap<>();
+		Collection<Event> eventsInDate = this.getEventSource().getCrimeEventsOn(date);
 		
-		for(int district : this.graph.vertexSet())
-		{
-			orderedMap.put(district, new HashMap<>());
-		}
+		if(eventsInDate.isEmpty()) return false;
 		
-		for(int district : orderedMap.keySet())
+		beforeChange.run();
+		int startDistrict = this.computeStartDistrict();
+		
+		//initialise and run simulation
+		this.simulator = this.newSimulator(dispatchStrategy);
+		this.simulator.initialize(this.distances, startDistrict, eventsInDate, numAgents);
+		this.simulator.run();
+		this.monitor.record(this.simulator.getMetrics());
+		
+		return true;
+	}
+	
+	/**
+	 * Runs a single simulation over all the days in [fromDate, toDate], streaming the
+	 * crime events from one time ordered cursor instead of loading them day by day
+	 */
+	public boolean runSimulation(int numAgents, LocalDate fromDate, LocalDate toDate)
+	{
+		return this.runSimulation(numAgents, fromDate, toDate, DispatchStrategy.NEAREST_AVAILABLE);
+	}
+	
+	public boolean runSimulation(int numAgents, LocalDate fromDate, LocalDate toDate, 
+			DispatchStrategy dispatchStrategy)
+	{
+		this.checkSimulationInput(numAgents, fromDate);
+		this.checkSimulationInput(numAgents, toDate);
+		
+		if(fromDate.isAfter(toDate))
+			throw new RuntimeException("Error in runSimulation(): invalid date range");
+		
+		int startDistrict = this.computeStartDistrict();
+		
+		try(EventCursor events = this.getEventSource().openCrimeEventsCursor(fromDate.atStartOfDay(), 
+				toDate.plusDays(1).atStartOfDay()))
 		{
-			Map<Integer, Double> districtDistances = orderedMap.get(district);
+			if(!events.hasNext()) return false;
 			
-			for(var adjacentEdge : this.graph.edgesOf(district))
-			{
-				int adjacentDistrict = Graphs.getOppositeVertex(this.graph, adjacentEdge, district);
-				double distance = this.graph.getEdgeWeight(adjacentEdge);
-				
-				districtDistances.put(adjacentDistrict, distance);
-			}
+			this.simulator = this.newSimulator(dispatchStrategy);
+			this.simulator.initialize(this.distances, startDistrict, events, numAgents);
+			this.simulator.run();
+			this.monitor.record(this.simulator.getMetrics());
 		}
 		
-		return orderedMap;
+		return true;
 	}
 	
-	public boolean isGraphCreated()
+	public boolean runSimulation(int numAgents, Year year)
 	{
-		return this.graph != null;
+		return this.runSimulation(numAgents, year.atDay(1), year.atDay(year.length()));
 	}
 	
-	public boolean runSimulation(int numAgents, LocalDate date)
+	/**
+	 * Runs numReplications independent simulations of the given day in parallel, each one 
+	 * with its own random stream derived from seed, and summarises their bad managed events.
+	 * Returns null if there are no crime events in the date.
+	 */
+	public ReplicationStatistics runReplications(int numAgents, LocalDate date, int numReplications, long seed)
 	{
-		if(this.graph == null || numAgents < 1 || numAgents > 10 || 
-				date == null || this.numOfCrimesByDistrict.isEmpty()) 
-			throw new RuntimeException("Error in runSimulation()");
+		return this.runReplications(numAgents, date, numReplications, seed, DispatchStrategy.NEAREST_AVAILABLE);
+	}
+	
+	public ReplicationStatistics runReplications(int numAgents, LocalDate date, int numReplications, long seed,
+			DispatchStrategy dispatchStrategy)
+	{
+		this.checkSimulationInput(numAgents, date);
 		
-		Collection<Event> eventsInDate = this.dao.getCrimeEventsOn(date);
+		if(numReplications < 1)
+			throw new RuntimeException("Error in runReplications(): invalid number of replications");
 		
-		if(eventsInDate.isEmpty()) return false;
+		Collection<Event> eventsInDate = this.getEventSource().getCrimeEventsOn(date);
+		
+		if(eventsInDate.isEmpty()) return null;
+		
+		int startDistrict = this.computeStartDistrict();
+		DistanceMatrix distances = this.distances;
+		VertexLocator vertexLocator = this.vertexLocator;
+		
+		//seeds are drawn up front, so results do not depend on thread scheduling
+		SplittableRandom seedGenerator = new SplittableRandom(seed);
+		long[] seeds = new long[numReplications];
+		for(int i=0; i<numReplications; i++)
+			seeds[i] = seedGenerator.nextLong();
+		
+		int[] badManagedEvents = IntStream.range(0, numReplications).parallel().map(i -> 
+		{
+			Simulator replication = new Simulator(new SplittableRandom(seeds[i]), dispatchStrategy.newPolicy());
+			replication.setVertexLocator(vertexLocator);
+			replication.initialize(distances, startDistrict, eventsInDate, numAgents);
+			replication.run();
+			return replication.getNumOfBadManagedEvents();
+		}).toArray();
 		
-		//compute the less crimes district
+		return ReplicationStatistics.of(badManagedEvents);
+	}
+	
+	/**
+	 * Creates a sweep over all the numbers of agents in [minAgents, maxAgents] and all the
+	 * dates in [fromDate, toDate], with numReplications replications for each combination.
+	 * Throws IllegalArgumentException if they are more than SweepResult.MAX_CELLS.
+	 */
+	public SimulationSweep createSweep(int minAgents, int maxAgents, LocalDate fromDate, LocalDate toDate, 
+			int numReplications, long seed)
+	{
+		this.checkSimulationInput(minAgents, fromDate);
+		this.checkSimulationInput(maxAgents, toDate);
+		
+		if(minAgents > maxAgents || fromDate.isAfter(toDate) || numReplications < 1)
+			throw new RuntimeException("Error in createSweep()");
+		
+		long numCells = SweepResult.numCells(minAgents, maxAgents, fromDate, toDate, numReplications);
+		if(numCells > SweepResult.MAX_CELLS)
+			throw new IllegalArgumentException(String.format("Error in createSweep(): %d agent counts x %d days x %d "
+					+ "replications are more than %,d cells", maxAgents - minAgents + 1L, 
+					ChronoUnit.DAYS.between(fromDate, toDate) + 1, numReplications, SweepResult.MAX_CELLS));
+		
+		return new SimulationSweep(this.getEventSource(), this.distances, this.vertexLocator, this.computeStartDistrict(), 
+				minAgents, maxAgents, fromDate, toDate, numReplications, seed, ForkJoinPool.commonPool());
+	}
+	
+	private void checkSimulationInput(int numAgents, LocalDate date)
+	{
+		if(this.graph == null || numAgents < 1 || 
+				date == null || this.numOfCrimesByDistrict.isEmpty()) 
+			throw new RuntimeException("Error in runSimulation()");
+	}
+	
+	//compute the less crimes district
+	private int computeStartDistrict()
+	{
 		int startDistrict = Integer.MAX_VALUE;
 		int minCrimes = Integer.MAX_VALUE;
 		
@@ -144,16 +452,42 @@ public class Model
 			}
 		}
 		
-		//initialise and run simulation
-		this.simulator.initialize(this.graph, startDistrict, eventsInDate, numAgents);
-		this.simulator.run();
-		
-		return true;
+		return startDistrict;
+	}
+	
+	private Simulator newSimulator(DispatchStrategy dispatchStrategy)
+	{
+		Simulator simulator = new Simulator(new SplittableRandom(), dispatchStrategy.newPolicy());
+		simulator.setMetricsEnabled(this.telemetryEnabled);
+		simulator.setVertexLocator(this.vertexLocator);
+		return simulator;
 	}
 	
 	public int getNumOfBadManagedEvents()
 	{
-		return this.simulator.getNumOfBadManagedEvents();
+		return this.simulator == null ? 0 : this.simulator.getNumOfBadManagedEvents();
+	}
+	
+	/**
+	 * Enables the collection of telemetry in the next runSimulation() calls and,
+	 * if registerMBean is true, publishes it as a JMX MBean
+	 */
+	public void setTelemetryEnabled(boolean enabled, boolean registerMBean)
+	{
+		this.telemetryEnabled = enabled;
+		
+		if(enabled && registerMBean)
+			this.monitor.registerMBean();
+		else
+			this.monitor.unregisterMBean();
+	}
+	
+	/**
+	 * Metrics of the last runSimulation(), or null if telemetry is disabled
+	 */
+	public SimulationMetrics getLastSimulationMetrics()
+	{
+		return this.simulator == null ? null : this.simulator.getMetrics();
 	}
 	
 }
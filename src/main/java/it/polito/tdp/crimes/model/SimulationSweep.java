@@ -0,0 +1,208 @@
+package it.polito.tdp.crimes.model;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.polito.tdp.crimes.db.EventSource;
+import it.polito.tdp.simulation.DistanceMatrix;
+import it.polito.tdp.simulation.Simulator;
+import it.polito.tdp.simulation.VertexLocator;
+
+/**
+ * Runs the simulation for every (number of agents, date, replication) combination
+ * of a grid. The events are loaded once, a week at a time (the next week is prefetched while
+ * the current one is simulated), and each day's cells are fanned out over a fork-join pool.
+ */
+public class SimulationSweep
+{
+	private static final int CELLS_PER_TASK = 4;
+	private static final int DAYS_PER_FETCH = 7;
+
+	public interface ProgressListener
+	{
+		void progressChanged(long completedCells, long totalCells);
+	}
+
+	private final EventSource dao;
+	private final DistanceMatrix distances;
+	private final VertexLocator vertexLocator;
+	private final int startDistrict;
+	private final int minAgents;
+	private final int maxAgents;
+	private final LocalDate fromDate;
+	private final LocalDate toDate;
+	private final int numReplications;
+	private final long seed;
+	private final ForkJoinPool pool;
+
+	private volatile boolean cancelled;
+	private final AtomicLong completedCells;
+
+
+	SimulationSweep(EventSource dao, DistanceMatrix distances, VertexLocator vertexLocator, int startDistrict, 
+			int minAgents, int maxAgents, LocalDate fromDate, LocalDate toDate, int numReplications, long seed, ForkJoinPool pool)
+	{
+		this.dao = dao;
+		this.distances = distances;
+		this.vertexLocator = vertexLocator;
+		this.startDistrict = startDistrict;
+		this.minAgents = minAgents;
+		this.maxAgents = maxAgents;
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+		this.numReplications = numReplications;
+		this.seed = seed;
+		this.pool = pool;
+		this.completedCells = new AtomicLong();
+	}
+
+	/**
+	 * Runs the whole sweep, blocking the caller until it is completed.
+	 * Throws CancellationException if cancel() is called in the meantime.
+	 */
+	public SweepResult run(ProgressListener listener)
+	{
+		SweepResult result = new SweepResult(this.minAgents, this.maxAgents,
+				this.fromDate, this.toDate, this.numReplications);
+
+		int numDays = result.getNumDays();
+		int cellsPerDay = result.getNumAgentCounts() * this.numReplications;
+		long totalCells = result.getNumCells();
+		this.completedCells.set(0L);
+
+		CompletableFuture<Map<LocalDate, List<Event>>> nextBlock = this.loadEventsAsync(0, numDays);
+		Map<LocalDate, List<Event>> block = null;
+
+		for(int dayIndex=0; dayIndex<numDays; dayIndex++)
+		{
+			if(dayIndex % DAYS_PER_FETCH == 0)
+			{
+				block = nextBlock.join();
+
+				if(dayIndex + DAYS_PER_FETCH < numDays)
+					nextBlock = this.loadEventsAsync(dayIndex + DAYS_PER_FETCH, numDays);
+			}
+
+			if(this.cancelled)
+				throw new CancellationException("Sweep cancelled");
+
+			Collection<Event> dayEvents = block.get(this.fromDate.plusDays(dayIndex));
+
+			if(!dayEvents.isEmpty())
+			{
+				result.setDayHasEvents(dayIndex, true);
+				this.pool.invoke(new DayTask(result, dayIndex, dayEvents, 0, cellsPerDay, listener, totalCells));
+			}
+			else
+			{
+				long completed = this.completedCells.addAndGet(cellsPerDay);
+				if(listener != null) listener.progressChanged(completed, totalCells);
+			}
+		}
+
+		if(this.cancelled)
+			throw new CancellationException("Sweep cancelled");
+
+		return result;
+	}
+
+	public void cancel()
+	{
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return this.cancelled;
+	}
+
+	//the events of the block of days starting at dayIndex, in a single fetch
+	private CompletableFuture<Map<LocalDate, List<Event>>> loadEventsAsync(int dayIndex, int numDays)
+	{
+		LocalDate from = this.fromDate.plusDays(dayIndex);
+		LocalDate to = this.fromDate.plusDays(Math.min(dayIndex + DAYS_PER_FETCH, numDays));
+
+		return CompletableFuture.supplyAsync(() -> this.dao.getCrimeEventsBetween(from, to));
+	}
+
+	private class DayTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final SweepResult result;
+		private final int dayIndex;
+		private final Collection<Event> events;
+		private final int fromCell;	//inclusive, relative to the day
+		private final int toCell;	//exclusive, relative to the day
+		private final ProgressListener listener;
+		private final long totalCells;
+
+		DayTask(SweepResult result, int dayIndex, Collection<Event> events, int fromCell, int toCell,
+				ProgressListener listener, long totalCells)
+		{
+			this.result = result;
+			this.dayIndex = dayIndex;
+			this.events = events;
+			this.fromCell = fromCell;
+			this.toCell = toCell;
+			this.listener = listener;
+			this.totalCells = totalCells;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(this.toCell - this.fromCell > CELLS_PER_TASK)
+			{
+				int middle = (this.fromCell + this.toCell) >>> 1;
+				invokeAll(new DayTask(this.result, this.dayIndex, this.events, this.fromCell, middle,
+								this.listener, this.totalCells),
+						new DayTask(this.result, this.dayIndex, this.events, middle, this.toCell,
+								this.listener, this.totalCells));
+				return;
+			}
+
+			for(int cell=this.fromCell; cell<this.toCell; cell++)
+			{
+				if(cancelled) return;
+
+				int agentIndex = cell / numReplications;
+				int replication = cell % numReplications;
+				int cellIndex = this.result.cellIndex(this.dayIndex, agentIndex, replication);
+
+				Simulator simulator = new Simulator(new SplittableRandom(cellSeed(seed, cellIndex)));
+				simulator.setVertexLocator(vertexLocator);
+				simulator.initialize(distances, startDistrict, this.events, minAgents + agentIndex);
+				simulator.run();
+				this.result.setBadManagedEvents(cellIndex, simulator.getNumOfBadManagedEvents());
+
+				long completed = completedCells.incrementAndGet();
+				if(this.listener != null) this.listener.progressChanged(completed, this.totalCells);
+			}
+		}
+	}
+
+	//independent, reproducible seed for each cell of the cube: the sweep seed and the cell index
+	//are mixed in turn, so neighbouring seeds do not give shifted copies of the same streams
+	private static long cellSeed(long seed, int cellIndex)
+	{
+		return mix64(mix64(seed) + cellIndex);
+	}
+
+	//SplitMix64 finaliser
+	private static long mix64(long z)
+	{
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
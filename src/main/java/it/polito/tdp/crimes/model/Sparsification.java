@@ -0,0 +1,55 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Which vertices of a fine-grained graph (neighbourhoods, grid cells) are linked
+ * by an edge: each vertex with its k nearest ones, or all the vertices within a radius.
+ */
+public class Sparsification
+{
+	private final int k;				//0 if by radius
+	private final double radiusKm;		//0 if k nearest
+
+
+	private Sparsification(int k, double radiusKm)
+	{
+		this.k = k;
+		this.radiusKm = radiusKm;
+	}
+
+	public static Sparsification kNearest(int k)
+	{
+		if(k < 1)
+			throw new IllegalArgumentException("Error: k must be positive");
+
+		return new Sparsification(k, 0.0);
+	}
+
+	public static Sparsification withinKm(double radiusKm)
+	{
+		if(!(radiusKm > 0.0))
+			throw new IllegalArgumentException("Error: radius must be positive");
+
+		return new Sparsification(0, radiusKm);
+	}
+
+	public boolean isKNearest()
+	{
+		return this.k > 0;
+	}
+
+	public int getK()
+	{
+		return this.k;
+	}
+
+	public double getRadiusKm()
+	{
+		return this.radiusKm;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.isKNearest() ? this.k + "-nearest" : "within " + this.radiusKm + " km";
+	}
+}
@@ -0,0 +1,265 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.builder.GraphTypeBuilder;
+
+/**
+ * Builds a sparse graph over many located vertices (neighbourhoods, grid cells), where
+ * a complete graph would not fit in memory. Neighbours are found with a k-d tree over the
+ * unit vectors of GreatCircle, whose chords order the vertices exactly as their great-circle
+ * distances, and edges are weighted by the same kernel.
+ * The graph is made connected by linking every component to its closest one, so that
+ * every vertex can be reached by the agents.
+ */
+public class SpatialGraphBuilder
+{
+	private final int[] vertexIds;
+	private final GreatCircle points;
+	private final KdTree tree;
+
+
+	private SpatialGraphBuilder(int[] vertexIds, GreatCircle points)
+	{
+		this.vertexIds = vertexIds;
+		this.points = points;
+		this.tree = new KdTree(points.xs, points.ys, points.zs);
+	}
+
+	/**
+	 * The arrays are parallel: vertex i is vertexIds[i], at latitudes[i], longitudes[i] (degrees)
+	 */
+	public static SpatialGraphBuilder of(int[] vertexIds, double[] latitudes, double[] longitudes)
+	{
+		if(latitudes.length != vertexIds.length || longitudes.length != vertexIds.length)
+			throw new IllegalArgumentException("Error: vertices and coordinates do not match");
+
+		return new SpatialGraphBuilder(vertexIds, GreatCircle.of(latitudes, longitudes));
+	}
+
+	public int size()
+	{
+		return this.vertexIds.length;
+	}
+
+	/**
+	 * The id of the vertex closest to the given point, or -1 if there are no vertices
+	 */
+	public int nearestVertex(double latitude, double longitude)
+	{
+		double[] point = GreatCircle.unitVector(latitude, longitude);
+		int nearest = this.tree.nearest(point[0], point[1], point[2]);
+		return nearest == -1 ? -1 : this.vertexIds[nearest];
+	}
+
+	public Graph<Integer, DefaultWeightedEdge> buildGraph(Sparsification sparsification)
+	{
+		int n = this.vertexIds.length;
+		EdgeList edges = new EdgeList();
+
+		double[] xs = this.points.xs;
+		double[] ys = this.points.ys;
+		double[] zs = this.points.zs;
+
+		if(sparsification.isKNearest())
+		{
+			int k = sparsification.getK() + 1;	//the vertex itself is found too
+			int[] nearest = new int[k];
+			double[] squaredDistances = new double[k];
+
+			for(int i=0; i<n; i++)
+			{
+				int count = this.tree.kNearest(xs[i], ys[i], zs[i], k, nearest, squaredDistances);
+
+				for(int c=0; c<count; c++)
+				{
+					if(nearest[c] != i)
+						edges.add(i, nearest[c]);
+				}
+			}
+		}
+		else
+		{
+			double radius = GreatCircle.kmToChord(sparsification.getRadiusKm());
+
+			for(int i=0; i<n; i++)
+			{
+				final int source = i;
+				this.tree.withinRadius(xs[i], ys[i], zs[i], radius, j ->
+				{
+					if(j > source) edges.add(source, j);
+				});
+			}
+		}
+
+		this.connectComponents(edges);
+
+		//bulk load, each undirected edge once
+		Graph<Integer, DefaultWeightedEdge> graph = GraphTypeBuilder.<Integer, DefaultWeightedEdge>undirected()
+																	 .allowingMultipleEdges(false)
+																	 .allowingSelfLoops(false)
+																	 .weighted(true)
+																	 .edgeClass(DefaultWeightedEdge.class)
+																	 .buildGraph();
+		Integer[] vertices = new Integer[n];
+		for(int i=0; i<n; i++)
+		{
+			vertices[i] = this.vertexIds[i];
+			graph.addVertex(vertices[i]);
+		}
+
+		long[] uniqueEdges = edges.sortedUnique();
+		for(long edge : uniqueEdges)
+		{
+			int i = (int)(edge >>> 32);
+			int j = (int)edge;
+			double distance = this.points.distanceKm(i, j);
+
+			DefaultWeightedEdge graphEdge = graph.addEdge(vertices[i], vertices[j]);
+			graph.setEdgeWeight(graphEdge, distance);
+		}
+
+		return graph;
+	}
+
+	//Borůvka-like: every component but the largest is linked to its closest vertex in another component
+	private void connectComponents(EdgeList edges)
+	{
+		int n = this.vertexIds.length;
+		UnionFind components = new UnionFind(n);
+
+		for(int e=0; e<edges.size; e++)
+			components.union((int)(edges.edges[e] >>> 32), (int)edges.edges[e]);
+
+		double[] xs = this.points.xs;
+		double[] ys = this.points.ys;
+		double[] zs = this.points.zs;
+
+		int[] bestSource = new int[n];
+		int[] bestTarget = new int[n];
+		double[] bestSquaredDistance = new double[n];
+
+		while(components.count > 1)
+		{
+			int largest = components.largest();
+			Arrays.fill(bestTarget, -1);
+			Arrays.fill(bestSquaredDistance, Double.POSITIVE_INFINITY);
+
+			for(int i=0; i<n; i++)
+			{
+				int root = components.find(i);
+				if(root == largest) continue;
+
+				int target = this.tree.nearest(xs[i], ys[i], zs[i], j -> components.find(j) != root);
+				double dx = xs[target] - xs[i];
+				double dy = ys[target] - ys[i];
+				double dz = zs[target] - zs[i];
+				double squaredDistance = dx * dx + dy * dy + dz * dz;
+
+				if(squaredDistance < bestSquaredDistance[root])
+				{
+					bestSquaredDistance[root] = squaredDistance;
+					bestSource[root] = i;
+					bestTarget[root] = target;
+				}
+			}
+
+			for(int root=0; root<n; root++)
+			{
+				if(bestTarget[root] != -1 && components.union(bestSource[root], bestTarget[root]))
+					edges.add(bestSource[root], bestTarget[root]);
+			}
+		}
+	}
+
+	//undirected edges packed as (min << 32 | max)
+	private static class EdgeList
+	{
+		long[] edges = new long[64];
+		int size;
+
+		void add(int i, int j)
+		{
+			if(this.size == this.edges.length)
+				this.edges = Arrays.copyOf(this.edges, this.size * 2);
+
+			this.edges[this.size++] = ((long)Math.min(i, j) << 32) | Math.max(i, j);
+		}
+
+		long[] sortedUnique()
+		{
+			long[] sorted = Arrays.copyOf(this.edges, this.size);
+			Arrays.sort(sorted);
+
+			int unique = 0;
+			for(int e=0; e<sorted.length; e++)
+			{
+				if(e == 0 || sorted[e] != sorted[e - 1])
+					sorted[unique++] = sorted[e];
+			}
+
+			return Arrays.copyOf(sorted, unique);
+		}
+	}
+
+	private static class UnionFind
+	{
+		final int[] parents;
+		final int[] sizes;
+		int count;
+
+		UnionFind(int n)
+		{
+			this.parents = new int[n];
+			this.sizes = new int[n];
+			for(int i=0; i<n; i++)
+			{
+				this.parents[i] = i;
+				this.sizes[i] = 1;
+			}
+			this.count = n;
+		}
+
+		int find(int i)
+		{
+			while(this.parents[i] != i)
+			{
+				this.parents[i] = this.parents[this.parents[i]];	//path halving
+				i = this.parents[i];
+			}
+			return i;
+		}
+
+		boolean union(int i, int j)
+		{
+			int root1 = this.find(i);
+			int root2 = this.find(j);
+			if(root1 == root2) return false;
+
+			if(this.sizes[root1] < this.sizes[root2])
+			{
+				int tmp = root1;
+				root1 = root2;
+				root2 = tmp;
+			}
+
+			this.parents[root2] = root1;
+			this.sizes[root1] += this.sizes[root2];
+			this.count--;
+			return true;
+		}
+
+		int largest()
+		{
+			int largest = -1;
+			for(int i=0; i<this.parents.length; i++)
+			{
+				if(this.parents[i] == i && (largest == -1 || this.sizes[i] > this.sizes[largest]))
+					largest = i;
+			}
+			return largest;
+		}
+	}
+}
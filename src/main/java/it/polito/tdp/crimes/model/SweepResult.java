@@ -0,0 +1,185 @@
+package it.polito.tdp.crimes.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import it.polito.tdp.simulation.ReplicationStatistics;
+
+/**
+ * Result cube of a parameter sweep: number of bad managed events for every
+ * (date, number of agents, replication) combination.
+ */
+public class SweepResult
+{
+	/**
+	 * Largest number of cells of a sweep: they are one int array (8 GB at this size)
+	 */
+	public static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+	private final int minAgents;
+	private final int maxAgents;
+	private final LocalDate fromDate;
+	private final LocalDate toDate;
+	private final int numReplications;
+
+	private final int[] badManagedEvents;
+	private final boolean[] dayHasEvents;
+
+
+	SweepResult(int minAgents, int maxAgents, LocalDate fromDate, LocalDate toDate, int numReplications)
+	{
+		this.minAgents = minAgents;
+		this.maxAgents = maxAgents;
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+		this.numReplications = numReplications;
+
+		long numCells = numCells(minAgents, maxAgents, fromDate, toDate, numReplications);
+		if(numCells > MAX_CELLS)
+			throw new IllegalArgumentException("Error: a sweep of " + numCells + " cells is too large");
+
+		this.badManagedEvents = new int[(int)numCells];
+		this.dayHasEvents = new boolean[(int)ChronoUnit.DAYS.between(fromDate, toDate) + 1];
+	}
+
+	/**
+	 * Number of (date, number of agents, replication) cells of a sweep, Long.MAX_VALUE if it
+	 * does not even fit a long
+	 */
+	static long numCells(int minAgents, int maxAgents, LocalDate fromDate, LocalDate toDate, int numReplications)
+	{
+		long numDays = ChronoUnit.DAYS.between(fromDate, toDate) + 1;
+		long numAgentCounts = (long)maxAgents - minAgents + 1;
+
+		try
+		{
+			return Math.multiplyExact(Math.multiplyExact(numDays, numAgentCounts), (long)numReplications);
+		}
+		catch(ArithmeticException ae)
+		{
+			return Long.MAX_VALUE;
+		}
+	}
+
+	public int getMinAgents() { return this.minAgents; }
+	public int getMaxAgents() { return this.maxAgents; }
+	public LocalDate getFromDate() { return this.fromDate; }
+	public LocalDate getToDate() { return this.toDate; }
+	public int getNumReplications() { return this.numReplications; }
+	public int getNumDays() { return this.dayHasEvents.length; }
+	public int getNumAgentCounts() { return this.maxAgents - this.minAgents + 1; }
+
+	public int getNumCells()
+	{
+		return this.badManagedEvents.length;
+	}
+
+	public boolean hasEventsOn(LocalDate date)
+	{
+		return this.dayHasEvents[this.dayIndexOf(date)];
+	}
+
+	public int getBadManagedEvents(int numAgents, LocalDate date, int replication)
+	{
+		return this.badManagedEvents[this.cellIndex(this.dayIndexOf(date), this.agentIndexOf(numAgents), replication)];
+	}
+
+	/**
+	 * Statistics over the replications of one (number of agents, date) pair,
+	 * or null if there were no crime events in that date
+	 */
+	public ReplicationStatistics getStatistics(int numAgents, LocalDate date)
+	{
+		int dayIndex = this.dayIndexOf(date);
+		if(!this.dayHasEvents[dayIndex]) return null;
+
+		int from = this.cellIndex(dayIndex, this.agentIndexOf(numAgents), 0);
+		return ReplicationStatistics.of(Arrays.copyOfRange(this.badManagedEvents, from, from + this.numReplications));
+	}
+
+	/**
+	 * Statistics over all the dates with crime events and all the replications
+	 * for the given number of agents, or null if no date had crime events
+	 */
+	public ReplicationStatistics getStatistics(int numAgents)
+	{
+		int agentIndex = this.agentIndexOf(numAgents);
+		int numDaysWithEvents = 0;
+		for(boolean hasEvents : this.dayHasEvents)
+			if(hasEvents) numDaysWithEvents++;
+
+		if(numDaysWithEvents == 0) return null;
+
+		int[] samples = new int[numDaysWithEvents * this.numReplications];
+		int i = 0;
+		for(int dayIndex=0; dayIndex<this.dayHasEvents.length; dayIndex++)
+		{
+			if(!this.dayHasEvents[dayIndex]) continue;
+
+			int from = this.cellIndex(dayIndex, agentIndex, 0);
+			System.arraycopy(this.badManagedEvents, from, samples, i, this.numReplications);
+			i += this.numReplications;
+		}
+
+		return ReplicationStatistics.of(samples);
+	}
+
+	/**
+	 * Writes the cube as CSV (date, agents, replication, badManagedEvents),
+	 * skipping the dates without crime events
+	 */
+	public void writeCsv(Writer writer) throws IOException
+	{
+		writer.write("date,agents,replication,badManagedEvents\n");
+
+		for(int dayIndex=0; dayIndex<this.dayHasEvents.length; dayIndex++)
+		{
+			if(!this.dayHasEvents[dayIndex]) continue;
+
+			String date = this.fromDate.plusDays(dayIndex).toString();
+
+			for(int agentIndex=0; agentIndex<this.getNumAgentCounts(); agentIndex++)
+				for(int replication=0; replication<this.numReplications; replication++)
+				{
+					writer.write(String.format("%s,%d,%d,%d\n", date, this.minAgents + agentIndex, replication,
+							this.badManagedEvents[this.cellIndex(dayIndex, agentIndex, replication)]));
+				}
+		}
+
+		writer.flush();
+	}
+
+	void setDayHasEvents(int dayIndex, boolean hasEvents)
+	{
+		this.dayHasEvents[dayIndex] = hasEvents;
+	}
+
+	void setBadManagedEvents(int cellIndex, int value)
+	{
+		this.badManagedEvents[cellIndex] = value;
+	}
+
+	int cellIndex(int dayIndex, int agentIndex, int replication)
+	{
+		return (dayIndex * this.getNumAgentCounts() + agentIndex) * this.numReplications + replication;
+	}
+
+	private int dayIndexOf(LocalDate date)
+	{
+		if(date.isBefore(this.fromDate) || date.isAfter(this.toDate))
+			throw new IllegalArgumentException("Error: date " + date + " out of sweep range");
+
+		return (int)ChronoUnit.DAYS.between(this.fromDate, date);
+	}
+
+	private int agentIndexOf(int numAgents)
+	{
+		if(numAgents < this.minAgents || numAgents > this.maxAgents)
+			throw new IllegalArgumentException("Error: number of agents " + numAgents + " out of sweep range");
+
+		return numAgents - this.minAgents;
+	}
+}
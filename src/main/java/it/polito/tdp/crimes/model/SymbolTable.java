@@ -0,0 +1,67 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the values of a low-cardinality string column (categories, offense types,
+ * neighbourhoods): every distinct string gets a dense int code the first time it is seen,
+ * so events keep a code instead of their own copy of the string, and comparing two values
+ * is comparing two ints. Codes are never removed. Thread safe: lookups do not lock.
+ */
+public class SymbolTable
+{
+	public static final int NO_SYMBOL = -1;		//code of null
+
+	private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+	private volatile String[] symbols = new String[16];
+	private int size;	//guarded by this
+
+
+	/**
+	 * The code of the string, which is added to the table if it is new (NO_SYMBOL for null)
+	 */
+	public int codeOf(String symbol)
+	{
+		if(symbol == null) return NO_SYMBOL;
+
+		Integer code = this.codes.get(symbol);
+		if(code != null) return code;
+
+		synchronized(this)
+		{
+			code = this.codes.get(symbol);
+			if(code != null) return code;
+
+			String[] symbols = this.symbols;
+			if(this.size == symbols.length)
+				symbols = Arrays.copyOf(symbols, 2 * symbols.length);
+
+			symbols[this.size] = symbol;
+			this.symbols = symbols;	//publishes the new symbol before its code
+			this.codes.put(symbol, this.size);
+
+			return this.size++;
+		}
+	}
+
+	/**
+	 * The string with the given code (null for NO_SYMBOL)
+	 */
+	public String symbolOf(int code)
+	{
+		if(code == NO_SYMBOL) return null;
+
+		String[] symbols = this.symbols;
+		if(code < 0 || code >= symbols.length || symbols[code] == null)
+			throw new IllegalArgumentException("Error: unknown symbol code " + code);
+
+		return symbols[code];
+	}
+
+	public synchronized int size()
+	{
+		return this.size;
+	}
+}
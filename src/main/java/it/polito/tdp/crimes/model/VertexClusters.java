@@ -0,0 +1,146 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Groups the crimes of a period into the vertices of a fine-grained graph (neighbourhoods
+ * or square grid cells): each vertex gets a dense id, the centroid of its crimes and
+ * their number. Crimes without coordinates are ignored.
+ */
+class VertexClusters
+{
+	private static final double KM_PER_DEGREE = Math.toRadians(1.0) * GreatCircle.EARTH_RADIUS_KM;
+
+	private final int[] vertexIds;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final Map<Integer, Integer> numOfCrimesByVertex;
+	private final Map<String, Integer> idByNeighborhood;	//empty for grid cells
+	private final String description;
+
+
+	private VertexClusters(int numVertices, Map<String, Integer> idByNeighborhood, String description)
+	{
+		this.vertexIds = new int[numVertices];
+		this.latitudes = new double[numVertices];
+		this.longitudes = new double[numVertices];
+		this.numOfCrimesByVertex = new HashMap<>();
+		this.idByNeighborhood = idByNeighborhood;
+		this.description = description;
+	}
+
+	/**
+	 * One vertex for each neighborhood_id, with ids assigned in name order
+	 */
+	static VertexClusters byNeighborhood(Iterator<Event> events)
+	{
+		TreeMap<String, double[]> sums = new TreeMap<>();	//latitude sum, longitude sum, count
+
+		while(events.hasNext())
+		{
+			Event event = events.next();
+			if(!hasCoordinates(event) || event.getNeighborhood_id() == null) continue;
+
+			double[] sum = sums.computeIfAbsent(event.getNeighborhood_id(), name -> new double[3]);
+			sum[0] += event.getGeo_lat();
+			sum[1] += event.getGeo_lon();
+			sum[2]++;
+		}
+
+		Map<String, Integer> idByNeighborhood = new HashMap<>();
+		VertexClusters clusters = new VertexClusters(sums.size(), Collections.unmodifiableMap(idByNeighborhood),
+				"neighbourhoods");
+		int id = 0;
+
+		for(var pair : sums.entrySet())
+		{
+			idByNeighborhood.put(pair.getKey(), id);
+			clusters.set(id, pair.getValue());
+			id++;
+		}
+
+		return clusters;
+	}
+
+	/**
+	 * One vertex for each non-empty square cell of about cellSizeKm per side, with ids
+	 * assigned in (row, column) order. Every row of cells is as tall as cellSizeKm and
+	 * split in columns as wide as cellSizeKm at the row's latitude.
+	 */
+	static VertexClusters byGridCell(Iterator<Event> events, double cellSizeKm)
+	{
+		if(!(cellSizeKm > 0.0))
+			throw new IllegalArgumentException("Error: cell size must be positive");
+
+		double cellDegrees = cellSizeKm / KM_PER_DEGREE;
+		TreeMap<Long, double[]> sums = new TreeMap<>();
+
+		while(events.hasNext())
+		{
+			Event event = events.next();
+			if(!hasCoordinates(event)) continue;
+
+			long row = (long)Math.floor(event.getGeo_lat() / cellDegrees);
+			double rowLatitude = (row + 0.5) * cellDegrees;
+			double columnDegrees = cellDegrees / Math.max(Math.cos(Math.toRadians(rowLatitude)), 1e-6);
+			long column = (long)Math.floor(event.getGeo_lon() / columnDegrees);
+
+			double[] sum = sums.computeIfAbsent((row << 32) | (column & 0xFFFFFFFFL), cell -> new double[3]);
+			sum[0] += event.getGeo_lat();
+			sum[1] += event.getGeo_lon();
+			sum[2]++;
+		}
+
+		VertexClusters clusters = new VertexClusters(sums.size(), Collections.emptyMap(),
+				String.format("grid cells of %s km", cellSizeKm));
+		int id = 0;
+
+		for(double[] sum : sums.values())
+			clusters.set(id++, sum);
+
+		return clusters;
+	}
+
+	private void set(int id, double[] sum)
+	{
+		this.vertexIds[id] = id;
+		this.latitudes[id] = sum[0] / sum[2];
+		this.longitudes[id] = sum[1] / sum[2];
+		this.numOfCrimesByVertex.put(id, (int)sum[2]);
+	}
+
+	private static boolean hasCoordinates(Event event)
+	{
+		double latitude = event.getGeo_lat();
+		double longitude = event.getGeo_lon();
+
+		return !Double.isNaN(latitude) && !Double.isNaN(longitude) && (latitude != 0.0 || longitude != 0.0);
+	}
+
+	int size()
+	{
+		return this.vertexIds.length;
+	}
+
+	/**
+	 * What the vertices are, e.g. "grid cells of 0.5 km"
+	 */
+	String getDescription() { return this.description; }
+
+	int[] getVertexIds() { return this.vertexIds; }
+	double[] getLatitudes() { return this.latitudes; }
+	double[] getLongitudes() { return this.longitudes; }
+	Map<Integer, Integer> getNumOfCrimesByVertex() { return this.numOfCrimesByVertex; }
+
+	/**
+	 * The vertex of the given neighbourhood, or null if it is unknown (or the clusters are cells)
+	 */
+	Integer idOfNeighborhood(String neighborhood)
+	{
+		return neighborhood == null ? null : this.idByNeighborhood.get(neighborhood);
+	}
+}
@@ -0,0 +1,89 @@
+package it.polito.tdp.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Partition of a set of agents into per-key stacks (e.g. available agents by district),
+ * with O(1) insertion, removal of any agent and peek of a key's top agent.
+ */
+class AgentStacks
+{
+	private final int[][] stacks;
+	private final int[] sizes;
+	private final int[] keyOfAgent;			//-1 if the agent is not in any stack
+	private final int[] positionOfAgent;
+	private int totalSize;
+
+
+	AgentStacks(int numKeys, int numAgents)
+	{
+		this.stacks = new int[numKeys][];
+		this.sizes = new int[numKeys];
+		this.keyOfAgent = new int[numAgents];
+		this.positionOfAgent = new int[numAgents];
+
+		Arrays.fill(this.keyOfAgent, -1);
+	}
+
+	boolean isEmpty(int key)
+	{
+		return this.sizes[key] == 0;
+	}
+
+	int size(int key)
+	{
+		return this.sizes[key];
+	}
+
+	//number of agents over all the stacks
+	int size()
+	{
+		return this.totalSize;
+	}
+
+	int peek(int key)
+	{
+		return this.sizes[key] == 0 ? -1 : this.stacks[key][this.sizes[key] - 1];
+	}
+
+	boolean contains(int agent)
+	{
+		return this.keyOfAgent[agent] != -1;
+	}
+
+	void push(int key, int agent)
+	{
+		this.remove(agent);
+
+		int[] stack = this.stacks[key];
+		int size = this.sizes[key];
+
+		if(stack == null)
+			stack = this.stacks[key] = new int[4];
+		else if(size == stack.length)
+			stack = this.stacks[key] = Arrays.copyOf(stack, size * 2);
+
+		stack[size] = agent;
+		this.sizes[key] = size + 1;
+		this.keyOfAgent[agent] = key;
+		this.positionOfAgent[agent] = size;
+		this.totalSize++;
+	}
+
+	void remove(int agent)
+	{
+		int key = this.keyOfAgent[agent];
+		if(key == -1) return;
+
+		//move the top of the stack into the hole
+		int[] stack = this.stacks[key];
+		int last = --this.sizes[key];
+		int position = this.positionOfAgent[agent];
+		int movedAgent = stack[last];
+
+		stack[position] = movedAgent;
+		this.positionOfAgent[movedAgent] = position;
+		this.keyOfAgent[agent] = -1;
+		this.totalSize--;
+	}
+}
@@ -0,0 +1,32 @@
+package it.polito.tdp.simulation;
+
+/**
+ * How a freed agent chooses among the crimes waiting for an agent: it takes the crime with 
+ * the lowest cost = travelWeight * travel seconds - ageWeight * waiting seconds.
+ * Crimes waiting for more than maxWaitSeconds are dropped from the backlog and counted
+ * as bad managed.
+ */
+public class BacklogPolicy
+{
+	/** the oldest waiting crime, wherever it is (the original behaviour) */
+	public static final BacklogPolicy OLDEST_FIRST = new BacklogPolicy(1.0, 0.0, Long.MAX_VALUE);
+
+	private final double ageWeight;
+	private final double travelWeight;
+	private final long maxWaitSeconds;
+
+
+	public BacklogPolicy(double ageWeight, double travelWeight, long maxWaitSeconds)
+	{
+		if(ageWeight < 0.0 || travelWeight < 0.0 || ageWeight + travelWeight == 0.0 || maxWaitSeconds < 0)
+			throw new IllegalArgumentException("Error: invalid backlog policy");
+
+		this.ageWeight = ageWeight;
+		this.travelWeight = travelWeight;
+		this.maxWaitSeconds = maxWaitSeconds;
+	}
+
+	public double getAgeWeight() { return this.ageWeight; }
+	public double getTravelWeight() { return this.travelWeight; }
+	public long getMaxWaitSeconds() { return this.maxWaitSeconds; }
+}
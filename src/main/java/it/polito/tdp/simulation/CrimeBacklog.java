@@ -0,0 +1,269 @@
+package it.polito.tdp.simulation;
+
+import java.util.Arrays;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Crimes waiting for an available agent, partitioned by district and ordered by time 
+ * inside each district (one EventCalendar per district). The districts with waiting crimes
+ * are kept in an indexed min-heap by their oldest crime, so the globally oldest crime and
+ * the stale crimes are found in O(log n). With a travel cost, the best crime for an agent
+ * is searched in order of distance from the agent, stopping as soon as no farther 
+ * district can beat the best crime found so far.
+ */
+class CrimeBacklog
+{
+	private final DistanceMatrix distances;
+	private final BacklogPolicy policy;
+
+	//waiting crimes: payloads of the district calendars are slots of the events pool
+	private final EventCalendar[] queues;
+	private Event[] events;
+	private int[] freeEvents;
+	private int numFreeEvents;
+	private int numEvents;
+	private int size;
+
+	//indexed min-heap of the districts with waiting crimes, by their oldest crime
+	private final int[] heap;
+	private final int[] positionInHeap;	//-1 if the district has no waiting crimes
+	private int heapSize;
+
+	private int lastPolledDistrict;
+
+
+	CrimeBacklog(DistanceMatrix distances, BacklogPolicy policy)
+	{
+		int numDistricts = distances.size();
+
+		this.distances = distances;
+		this.policy = policy;
+		this.queues = new EventCalendar[numDistricts];
+		this.events = new Event[16];
+		this.freeEvents = new int[16];
+		this.heap = new int[numDistricts];
+		this.positionInHeap = new int[numDistricts];
+		Arrays.fill(this.positionInHeap, -1);
+		this.lastPolledDistrict = -1;
+	}
+
+	boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	int size()
+	{
+		return this.size;
+	}
+
+	void add(Event event, long time, int district)
+	{
+		EventCalendar queue = this.queues[district];
+		if(queue == null)
+			queue = this.queues[district] = new EventCalendar(4);
+
+		queue.add(time, 0, this.store(event));
+		this.size++;
+
+		if(this.positionInHeap[district] == -1)
+		{
+			this.heap[this.heapSize] = district;
+			this.positionInHeap[district] = this.heapSize;
+			this.siftUp(this.heapSize++);
+		}
+		else if(queue.peekTime() == time)
+			this.siftUp(this.positionInHeap[district]);
+	}
+
+	/**
+	 * Removes the crimes that have been waiting for more than the policy's maximum wait
+	 * and returns how many they were
+	 */
+	int removeExpired(long now)
+	{
+		long maxWait = this.policy.getMaxWaitSeconds();
+		int removed = 0;
+
+		while(this.heapSize > 0 && now - this.oldestTimeOf(this.heap[0]) > maxWait)
+		{
+			this.release(this.pollFrom(this.heap[0]));
+			removed++;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Removes and returns the crime with the lowest cost for an agent in agentDistrict,
+	 * or null if there are no waiting crimes. Its district is given by getLastPolledDistrict().
+	 */
+	Event pollBest(int agentDistrict, long now)
+	{
+		if(this.heapSize == 0) return null;
+
+		int bestDistrict = this.heap[0];	//oldest crime
+
+		double travelWeight = this.policy.getTravelWeight();
+		double ageWeight = this.policy.getAgeWeight();
+
+		if(travelWeight > 0.0)
+		{
+			long oldestTime = this.oldestTimeOf(this.heap[0]);
+			double maxAgeBonus = ageWeight * (now - oldestTime);
+			double bestCost = Double.POSITIVE_INFINITY;
+
+			DistrictAdjacency adjacency = this.distances.getAdjacency();
+			int degree = adjacency.degree(agentDistrict);
+
+			//the agent's district, then its neighbours by distance
+			for(int k=-1; k<degree; k++)
+			{
+				int district = k == -1 ? agentDistrict : adjacency.neighbour(agentDistrict, k);
+				double travelCost = travelWeight * this.distances.travelSeconds(agentDistrict, district);
+
+				if(travelCost - maxAgeBonus >= bestCost)
+					break;	//farther districts cannot do better, even with the oldest crime
+
+				if(this.positionInHeap[district] == -1) continue;
+
+				double cost = travelCost - ageWeight * (now - this.oldestTimeOf(district));
+				if(cost < bestCost)
+				{
+					bestCost = cost;
+					bestDistrict = district;
+				}
+			}
+		}
+
+		this.lastPolledDistrict = bestDistrict;
+		return this.release(this.pollFrom(bestDistrict));
+	}
+
+	int getLastPolledDistrict()
+	{
+		return this.lastPolledDistrict;
+	}
+
+	private long oldestTimeOf(int district)
+	{
+		return this.queues[district].peekTime();
+	}
+
+	//removes the oldest crime of the district and returns its pool slot
+	private int pollFrom(int district)
+	{
+		EventCalendar queue = this.queues[district];
+		int slot = queue.poll();
+		int eventSlot = queue.payloadOf(slot);
+		queue.release(slot);
+		this.size--;
+
+		int position = this.positionInHeap[district];
+		if(queue.isEmpty())
+			this.removeFromHeap(position);
+		else
+			this.siftDown(position);	//its oldest crime can only be newer
+
+		return eventSlot;
+	}
+
+	private int store(Event event)
+	{
+		int eventSlot;
+
+		if(this.numFreeEvents > 0)
+			eventSlot = this.freeEvents[--this.numFreeEvents];
+		else
+		{
+			if(this.numEvents == this.events.length)
+			{
+				this.events = Arrays.copyOf(this.events, this.numEvents * 2);
+				this.freeEvents = Arrays.copyOf(this.freeEvents, this.numEvents * 2);
+			}
+			eventSlot = this.numEvents++;
+		}
+
+		this.events[eventSlot] = event;
+		return eventSlot;
+	}
+
+	private Event release(int eventSlot)
+	{
+		Event event = this.events[eventSlot];
+		this.events[eventSlot] = null;
+		this.freeEvents[this.numFreeEvents++] = eventSlot;
+		return event;
+	}
+
+	private boolean isBefore(int district1, int district2)
+	{
+		long time1 = this.oldestTimeOf(district1);
+		long time2 = this.oldestTimeOf(district2);
+
+		if(time1 != time2)
+			return time1 < time2;
+
+		return district1 < district2;
+	}
+
+	private void removeFromHeap(int position)
+	{
+		int district = this.heap[position];
+		this.positionInHeap[district] = -1;
+		this.heapSize--;
+
+		if(position == this.heapSize) return;
+
+		int last = this.heap[this.heapSize];
+		this.heap[position] = last;
+		this.positionInHeap[last] = position;
+		this.siftDown(position);
+		this.siftUp(this.positionInHeap[last]);
+	}
+
+	private void siftUp(int position)
+	{
+		int district = this.heap[position];
+
+		while(position > 0)
+		{
+			int parent = (position - 1) >>> 1;
+			int parentDistrict = this.heap[parent];
+
+			if(!this.isBefore(district, parentDistrict)) break;
+
+			this.heap[position] = parentDistrict;
+			this.positionInHeap[parentDistrict] = position;
+			position = parent;
+		}
+
+		this.heap[position] = district;
+		this.positionInHeap[district] = position;
+	}
+
+	private void siftDown(int position)
+	{
+		int district = this.heap[position];
+		int half = this.heapSize >>> 1;
+
+		while(position < half)
+		{
+			int child = 2 * position + 1;
+			int right = child + 1;
+
+			if(right < this.heapSize && this.isBefore(this.heap[right], this.heap[child]))
+				child = right;
+
+			if(!this.isBefore(this.heap[child], district)) break;
+
+			this.heap[position] = this.heap[child];
+			this.positionInHeap[this.heap[position]] = position;
+			position = child;
+		}
+
+		this.heap[position] = district;
+		this.positionInHeap[district] = position;
+	}
+}
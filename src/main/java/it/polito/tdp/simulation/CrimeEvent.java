@@ -1,25 +1,41 @@
 package it.polito.tdp.simulation;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 public abstract class CrimeEvent implements Comparable<CrimeEvent>
 {
-	private LocalDateTime time;
-	
-	
+	protected static final long NO_TIME = Long.MIN_VALUE;
+
+	//UTC epoch second, as used by the simulator: a LocalDateTime is three objects per event
+	private long epochSecond;
+
+
 	public CrimeEvent(LocalDateTime time)
 	{
-		this.time = time;
+		this.setTime(time);
 	}
-	
+
 	public LocalDateTime getTime()
 	{
-		return this.time; 
+		if(this.epochSecond == NO_TIME) return null;
+
+		return LocalDateTime.ofEpochSecond(this.epochSecond, 0, ZoneOffset.UTC);
+	}
+
+	protected void setTime(LocalDateTime time)
+	{
+		this.epochSecond = time == null ? NO_TIME : time.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	public long getEpochSecond()
+	{
+		return this.epochSecond;
 	}
-	
+
 	@Override
 	public int compareTo(CrimeEvent other)
 	{
-		return this.time.compareTo(other.time);
+		return Long.compare(this.epochSecond, other.epochSecond);
 	}
 }
@@ -0,0 +1,33 @@
+package it.polito.tdp.simulation;
+
+/**
+ * Rule used by the Simulator to choose which available agent answers a crime.
+ * <p>
+ * Agents are identified by their index in [0, numAgents) and districts by their index in the
+ * DistanceMatrix. Implementations keep their own indexes of the available agents, updated
+ * incrementally through agentDispatched() and agentReleased(), so that selectAgent()
+ * never scans or sorts the whole fleet.
+ */
+public interface DispatchPolicy
+{
+	/**
+	 * Resets the policy: all the numAgents agents are available in startDistrict
+	 */
+	void initialize(DistanceMatrix distances, int numAgents, int startDistrict);
+
+	/**
+	 * Returns the agent that should answer a crime in crimeDistrict, 
+	 * or -1 if no agent is available. The agent stays available until agentDispatched().
+	 */
+	int selectAgent(int crimeDistrict);
+
+	/**
+	 * The agent leaves for a crime in crimeDistrict and is no longer available
+	 */
+	void agentDispatched(int agent, int crimeDistrict);
+
+	/**
+	 * The agent is available again in district, at the given time (epoch seconds)
+	 */
+	void agentReleased(int agent, int district, long time);
+}
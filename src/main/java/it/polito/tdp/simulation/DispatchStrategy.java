@@ -0,0 +1,31 @@
+package it.polito.tdp.simulation;
+
+import java.util.function.Supplier;
+
+/**
+ * Built-in dispatch policies
+ */
+public enum DispatchStrategy
+{
+	/** the available agent closest to the crime */
+	NEAREST_AVAILABLE(NearestAvailablePolicy::new),
+	/** the agent that has been available for the longest time, wherever it is */
+	LEAST_RECENTLY_USED(LeastRecentlyUsedPolicy::new),
+	/** an available agent of the crime's zone, otherwise the closest available one */
+	ZONE_AFFINITY(ZoneAffinityPolicy::new);
+
+	private final Supplier<DispatchPolicy> factory;
+
+	private DispatchStrategy(Supplier<DispatchPolicy> factory)
+	{
+		this.factory = factory;
+	}
+
+	/**
+	 * Policies are stateful: every Simulator needs its own instance
+	 */
+	public DispatchPolicy newPolicy()
+	{
+		return this.factory.get();
+	}
+}
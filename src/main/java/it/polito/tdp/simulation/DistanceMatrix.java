@@ -0,0 +1,236 @@
+package it.polito.tdp.simulation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+/**
+ * Dense district-to-district distance (km) and travel time (s) matrices,
+ * stored row-major in flat arrays and addressed by dense district indices.
+ * Distances are the shortest travel distances, not necessarily direct edges.
+ */
+public class DistanceMatrix
+{
+	/**
+	 * Largest number of districts of a matrix. The matrices and the adjacency built from them
+	 * take about 24·n² bytes (distances 8, travel times 4, adjacency 12 per pair): 2.4 GB here,
+	 * while n² must also fit in an int index.
+	 */
+	public static final int MAX_VERTICES = 10_000;
+
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	private final int[] districtIds;				//index -> districtId
+	private final Map<Integer, Integer> indexById;	//districtId -> index
+	private final double[] distances;
+	private final double speedInKmH;
+	private final int[] travelSeconds;		//ints: half the memory, up to 68 years of travel
+	private volatile DistrictAdjacency adjacency;	//lazily built
+
+
+	private DistanceMatrix(int[] districtIds, double[] distances, double speedInKmH)
+	{
+		int n = districtIds.length;
+		checkSize(n);
+
+		this.districtIds = districtIds;
+		this.indexById = new HashMap<>();
+		for(int i=0; i<n; i++)
+			this.indexById.put(districtIds[i], i);
+
+		this.distances = distances;
+		this.speedInKmH = speedInKmH;
+		this.travelSeconds = new int[n * n];
+		IntStream rows = IntStream.range(0, n);
+		if(n >= PARALLEL_THRESHOLD) rows = rows.parallel();
+
+		rows.forEach(i ->
+		{
+			for(int index=i*n; index<(i+1)*n; index++)
+				this.travelSeconds[index] = this.toTravelSeconds(distances[index]);
+		});
+	}
+
+	private DistanceMatrix(DistanceMatrix other, double[] distances, int[] travelSeconds)
+	{
+		this.districtIds = other.districtIds;
+		this.indexById = other.indexById;
+		this.distances = distances;
+		this.speedInKmH = other.speedInKmH;
+		this.travelSeconds = travelSeconds;
+	}
+
+	/**
+	 * Throws IllegalArgumentException if n districts are more than MAX_VERTICES
+	 */
+	static void checkSize(int n)
+	{
+		if(n > MAX_VERTICES)
+			throw new IllegalArgumentException(String.format("Error: %d districts need %,d matrix cells, more than the %,d of %d districts",
+					n, (long)n * n, (long)MAX_VERTICES * MAX_VERTICES, MAX_VERTICES));
+	}
+
+	private int toTravelSeconds(double distance)
+	{
+		double hourTravelDuration = distance / this.speedInKmH;
+		return (int)(hourTravelDuration * 60.0 * 60.0);
+	}
+
+	/**
+	 * Travel distances along the shortest paths of the graph, which does not need to be complete
+	 * (see ShortestPaths). Unreachable districts are at +Infinity.
+	 */
+	public static DistanceMatrix of(Graph<Integer, DefaultWeightedEdge> graph, double speedInKmH)
+	{
+		int[] districtIds = graph.vertexSet().stream().mapToInt(Integer::intValue).sorted().toArray();
+		int n = districtIds.length;
+
+		Map<Integer, Integer> indexById = new HashMap<>();
+		for(int i=0; i<n; i++)
+			indexById.put(districtIds[i], i);
+
+		//compressed sparse rows, every undirected edge in both directions
+		int numEdges = graph.edgeSet().size();
+		int[] sources = new int[numEdges];
+		int[] targets = new int[numEdges];
+		double[] weights = new double[numEdges];
+		int[] offsets = new int[n + 1];
+		int e = 0;
+
+		for(DefaultWeightedEdge edge : graph.edgeSet())
+		{
+			sources[e] = indexById.get(graph.getEdgeSource(edge));
+			targets[e] = indexById.get(graph.getEdgeTarget(edge));
+			weights[e] = graph.getEdgeWeight(edge);
+			offsets[sources[e] + 1]++;
+			offsets[targets[e] + 1]++;
+			e++;
+		}
+
+		for(int v=0; v<n; v++)
+			offsets[v + 1] += offsets[v];
+
+		int[] next = Arrays.copyOf(offsets, n);
+		int[] csrTargets = new int[2 * numEdges];
+		double[] csrWeights = new double[2 * numEdges];
+
+		for(e=0; e<numEdges; e++)
+		{
+			int forward = next[sources[e]]++;
+			csrTargets[forward] = targets[e];
+			csrWeights[forward] = weights[e];
+
+			int backward = next[targets[e]]++;
+			csrTargets[backward] = sources[e];
+			csrWeights[backward] = weights[e];
+		}
+
+		double[] distances = ShortestPaths.allPairs(n, offsets, csrTargets, csrWeights);
+		return new DistanceMatrix(districtIds, distances, speedInKmH);
+	}
+
+	/**
+	 * Wraps an already computed row-major n×n distance matrix (km) over the given district ids,
+	 * e.g. the great-circle distances of a DistrictGraphBuilder, which are already the shortest ones.
+	 * The arrays are not copied and must not be modified.
+	 */
+	public static DistanceMatrix of(int[] districtIds, double[] distances, double speedInKmH)
+	{
+		checkSize(districtIds.length);
+		if(distances.length != districtIds.length * districtIds.length)
+			throw new IllegalArgumentException("Error: distance matrix size does not match the number of districts");
+
+		return new DistanceMatrix(districtIds, distances, speedInKmH);
+	}
+
+	/**
+	 * A copy of this matrix where the distances from and to the given districts (dense indices)
+	 * are replaced by the given rows (rows[k] belongs to indices[k]). Only those rows and columns
+	 * of travel times are recomputed; the adjacency is sorted again on first use.
+	 */
+	public DistanceMatrix withDistancesOf(int[] indices, double[][] rows)
+	{
+		int n = this.districtIds.length;
+
+		if(rows.length != indices.length)
+			throw new IllegalArgumentException("Error: rows do not match the districts to update");
+
+		double[] distances = this.distances.clone();
+		int[] travelSeconds = this.travelSeconds.clone();
+
+		for(int k=0; k<indices.length; k++)
+		{
+			int i = indices[k];
+			double[] row = rows[k];
+
+			if(row.length != n)
+				throw new IllegalArgumentException("Error: distance row size does not match the number of districts");
+
+			for(int j=0; j<n; j++)
+			{
+				int seconds = this.toTravelSeconds(row[j]);
+
+				distances[i * n + j] = row[j];
+				distances[j * n + i] = row[j];
+				travelSeconds[i * n + j] = seconds;
+				travelSeconds[j * n + i] = seconds;
+			}
+		}
+
+		return new DistanceMatrix(this, distances, travelSeconds);
+	}
+
+	public int size()
+	{
+		return this.districtIds.length;
+	}
+
+	public int indexOf(int districtId)
+	{
+		Integer index = this.indexById.get(districtId);
+
+		if(index == null)
+			throw new IllegalArgumentException("Error: district " + districtId + " not found in distance matrix");
+
+		return index;
+	}
+
+	public int districtAt(int index)
+	{
+		return this.districtIds[index];
+	}
+
+	public double distance(int fromIndex, int toIndex)
+	{
+		return this.distances[fromIndex * this.districtIds.length + toIndex];
+	}
+
+	public long travelSeconds(int fromIndex, int toIndex)
+	{
+		return this.travelSeconds[fromIndex * this.districtIds.length + toIndex];
+	}
+
+	/**
+	 * The distance-sorted adjacency of the districts, built (in parallel) on first use and shared
+	 */
+	public DistrictAdjacency getAdjacency()
+	{
+		DistrictAdjacency result = this.adjacency;
+
+		if(result == null)
+		{
+			synchronized(this)
+			{
+				result = this.adjacency;
+				if(result == null)
+					this.adjacency = result = DistrictAdjacency.of(this.districtIds, this.distances);
+			}
+		}
+
+		return result;
+	}
+}
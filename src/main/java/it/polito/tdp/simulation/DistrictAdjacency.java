@@ -0,0 +1,160 @@
+package it.polito.tdp.simulation;
+
+import java.util.stream.IntStream;
+
+/**
+ * Compressed sparse row adjacency of the district graph: the neighbours of district i
+ * (dense indices, as in DistanceMatrix) are neighbours[offsets[i] .. offsets[i+1]), sorted
+ * by distance (ties by index), with their distances in the parallel weights array.
+ * Districts at infinite distance are not neighbours. Queries do not allocate.
+ */
+public class DistrictAdjacency
+{
+	//below this size the rows are sorted sequentially
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	private final int[] districtIds;	//index -> districtId
+	private final int[] offsets;
+	private final int[] neighbours;
+	private final double[] weights;
+
+
+	private DistrictAdjacency(int[] districtIds, int[] offsets, int[] neighbours, double[] weights)
+	{
+		this.districtIds = districtIds;
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		this.weights = weights;
+	}
+
+	/**
+	 * Builds the adjacency from a dense row-major n×n distance matrix
+	 */
+	static DistrictAdjacency of(int[] districtIds, double[] distances)
+	{
+		int n = districtIds.length;
+
+		//degrees first, so that every row can be filled and sorted independently
+		int[] offsets = new int[n + 1];
+		for(int i=0; i<n; i++)
+		{
+			int degree = 0;
+			for(int j=0; j<n; j++)
+			{
+				if(j != i && distances[i * n + j] != Double.POSITIVE_INFINITY)
+					degree++;
+			}
+			offsets[i + 1] = offsets[i] + degree;
+		}
+
+		int[] neighbours = new int[offsets[n]];
+		double[] weights = new double[offsets[n]];
+
+		IntStream rows = IntStream.range(0, n);
+		if(n >= PARALLEL_THRESHOLD) rows = rows.parallel();
+
+		rows.forEach(i ->
+		{
+			int edge = offsets[i];
+			for(int j=0; j<n; j++)
+			{
+				double distance = distances[i * n + j];
+
+				if(j != i && distance != Double.POSITIVE_INFINITY)
+				{
+					neighbours[edge] = j;
+					weights[edge] = distance;
+					edge++;
+				}
+			}
+
+			//stable: neighbours at the same distance stay in index order
+			int degree = offsets[i + 1] - offsets[i];
+			sort(neighbours, weights, offsets[i], offsets[i + 1], new int[degree], new double[degree]);
+		});
+
+		return new DistrictAdjacency(districtIds, offsets, neighbours, weights);
+	}
+
+	public int size()
+	{
+		return this.districtIds.length;
+	}
+
+	public int districtAt(int index)
+	{
+		return this.districtIds[index];
+	}
+
+	public int degree(int index)
+	{
+		return this.offsets[index + 1] - this.offsets[index];
+	}
+
+	/**
+	 * The k-th nearest neighbour of the district (k in [0, degree))
+	 */
+	public int neighbour(int index, int k)
+	{
+		return this.neighbours[this.offsets[index] + k];
+	}
+
+	/**
+	 * The distance (km) of the k-th nearest neighbour of the district
+	 */
+	public double distance(int index, int k)
+	{
+		return this.weights[this.offsets[index] + k];
+	}
+
+	/**
+	 * Copies the (at most) k nearest neighbours of the district into the given array,
+	 * returning how many they are
+	 */
+	public int nearest(int index, int k, int[] into)
+	{
+		int count = Math.min(Math.min(k, this.degree(index)), into.length);
+		System.arraycopy(this.neighbours, this.offsets[index], into, 0, count);
+		return count;
+	}
+
+	//stable merge sort of neighbours[from, to) by weight, moving the weights along
+	private static void sort(int[] neighbours, double[] weights, int from, int to, int[] tmpNeighbours, double[] tmpWeights)
+	{
+		if(to - from < 2) return;
+
+		int middle = (from + to) >>> 1;
+		sort(neighbours, weights, from, middle, tmpNeighbours, tmpWeights);
+		sort(neighbours, weights, middle, to, tmpNeighbours, tmpWeights);
+
+		if(weights[middle - 1] <= weights[middle]) return;	//already in order
+
+		int length = middle - from;
+		System.arraycopy(neighbours, from, tmpNeighbours, 0, length);
+		System.arraycopy(weights, from, tmpWeights, 0, length);
+
+		int left = 0;
+		int right = middle;
+		int position = from;
+
+		while(left < length && right < to)
+		{
+			if(weights[right] < tmpWeights[left])
+			{
+				neighbours[position] = neighbours[right];
+				weights[position++] = weights[right++];
+			}
+			else
+			{
+				neighbours[position] = tmpNeighbours[left];
+				weights[position++] = tmpWeights[left++];
+			}
+		}
+
+		while(left < length)
+		{
+			neighbours[position] = tmpNeighbours[left];
+			weights[position++] = tmpWeights[left++];
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package it.polito.tdp.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Priority queue of simulation events stored in primitive arrays.
+ * <p>
+ * Every event lives in a pooled slot holding its time (epoch seconds), its kind
+ * and an integer payload (e.g. an agent or crime index). Slots are recycled with
+ * {@link #release(int)}, so a calendar that has reached its steady-state size
+ * does not allocate anymore. Events with the same time are polled in insertion order.
+ */
+public class EventCalendar
+{
+	private static final int DEFAULT_CAPACITY = 64;
+
+	//slot pool
+	private long[] times;
+	private long[] sequences;
+	private int[] kinds;
+	private int[] payloads;
+	private int[] freeSlots;
+	private int numFreeSlots;
+	private int numSlots;
+
+	//binary heap of slot indices
+	private int[] heap;
+	private int size;
+	private long nextSequence;
+
+
+	public EventCalendar()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public EventCalendar(int initialCapacity)
+	{
+		int capacity = Math.max(initialCapacity, 1);
+
+		this.times = new long[capacity];
+		this.sequences = new long[capacity];
+		this.kinds = new int[capacity];
+		this.payloads = new int[capacity];
+		this.freeSlots = new int[capacity];
+		this.heap = new int[capacity];
+	}
+
+	public void clear()
+	{
+		this.size = 0;
+		this.numSlots = 0;
+		this.numFreeSlots = 0;
+		this.nextSequence = 0L;
+	}
+
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	public void add(long time, int kind, int payload)
+	{
+		int slot = this.acquireSlot();
+		this.times[slot] = time;
+		this.sequences[slot] = this.nextSequence++;
+		this.kinds[slot] = kind;
+		this.payloads[slot] = payload;
+
+		this.heap[this.size] = slot;
+		this.siftUp(this.size);
+		this.size++;
+	}
+
+	/**
+	 * Removes the earliest event and returns its slot, which stays readable
+	 * until it is given back with {@link #release(int)}. Returns -1 if the calendar is empty.
+	 */
+	public int poll()
+	{
+		if(this.size == 0) return -1;
+
+		int slot = this.heap[0];
+		this.size--;
+
+		if(this.size > 0)
+		{
+			this.heap[0] = this.heap[this.size];
+			this.siftDown(0);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Returns the time of the earliest event without removing it
+	 */
+	public long peekTime()
+	{
+		if(this.size == 0)
+			throw new IllegalStateException("Error: event calendar is empty");
+
+		return this.times[this.heap[0]];
+	}
+
+	public long timeOf(int slot) { return this.times[slot]; }
+	public int kindOf(int slot) { return this.kinds[slot]; }
+	public int payloadOf(int slot) { return this.payloads[slot]; }
+
+	public void release(int slot)
+	{
+		this.freeSlots[this.numFreeSlots++] = slot;
+	}
+
+	private int acquireSlot()
+	{
+		if(this.numFreeSlots > 0)
+			return this.freeSlots[--this.numFreeSlots];
+
+		if(this.numSlots == this.times.length)
+			this.grow();
+
+		return this.numSlots++;
+	}
+
+	private void grow()
+	{
+		int newCapacity = this.times.length * 2;
+
+		this.times = Arrays.copyOf(this.times, newCapacity);
+		this.sequences = Arrays.copyOf(this.sequences, newCapacity);
+		this.kinds = Arrays.copyOf(this.kinds, newCapacity);
+		this.payloads = Arrays.copyOf(this.payloads, newCapacity);
+		this.freeSlots = Arrays.copyOf(this.freeSlots, newCapacity);
+		this.heap = Arrays.copyOf(this.heap, newCapacity);
+	}
+
+	private boolean isBefore(int slot1, int slot2)
+	{
+		long time1 = this.times[slot1];
+		long time2 = this.times[slot2];
+
+		if(time1 != time2)
+			return time1 < time2;
+
+		return this.sequences[slot1] < this.sequences[slot2];
+	}
+
+	private void siftUp(int position)
+	{
+		int slot = this.heap[position];
+
+		while(position > 0)
+		{
+			int parent = (position - 1) >>> 1;
+			int parentSlot = this.heap[parent];
+
+			if(!this.isBefore(slot, parentSlot)) break;
+
+			this.heap[position] = parentSlot;
+			position = parent;
+		}
+
+		this.heap[position] = slot;
+	}
+
+	private void siftDown(int position)
+	{
+		int slot = this.heap[position];
+		int half = this.size >>> 1;
+
+		while(position < half)
+		{
+			int child = 2 * position + 1;
+			int right = child + 1;
+
+			if(right < this.size && this.isBefore(this.heap[right], this.heap[child]))
+				child = right;
+
+			if(!this.isBefore(this.heap[child], slot)) break;
+
+			this.heap[position] = this.heap[child];
+			position = child;
+		}
+
+		this.heap[position] = slot;
+	}
+}
@@ -0,0 +1,75 @@
+package it.polito.tdp.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Dispatches the agent that has been idle for the longest time, spreading the workload
+ * evenly over the fleet. Agents are released in time order, so the available agents are
+ * kept in release order in a doubly linked list (over agent indices): every operation is O(1).
+ */
+class LeastRecentlyUsedPolicy implements DispatchPolicy
+{
+	private static final int NONE = -1;
+
+	private int[] previous;
+	private int[] next;
+	private boolean[] available;
+	private int head;	//least recently used
+	private int tail;	//most recently used
+
+
+	@Override
+	public void initialize(DistanceMatrix distances, int numAgents, int startDistrict)
+	{
+		this.previous = new int[numAgents];
+		this.next = new int[numAgents];
+		this.available = new boolean[numAgents];
+		Arrays.fill(this.previous, NONE);
+		Arrays.fill(this.next, NONE);
+		this.head = NONE;
+		this.tail = NONE;
+
+		for(int agent=0; agent<numAgents; agent++)
+			this.agentReleased(agent, startDistrict, Long.MIN_VALUE);
+	}
+
+	@Override
+	public int selectAgent(int crimeDistrict)
+	{
+		return this.head;	//NONE = -1 if no available agents
+	}
+
+	@Override
+	public void agentDispatched(int agent, int crimeDistrict)
+	{
+		if(!this.available[agent]) return;
+
+		int previousAgent = this.previous[agent];
+		int nextAgent = this.next[agent];
+
+		if(previousAgent == NONE) this.head = nextAgent;
+		else this.next[previousAgent] = nextAgent;
+
+		if(nextAgent == NONE) this.tail = previousAgent;
+		else this.previous[nextAgent] = previousAgent;
+
+		this.previous[agent] = NONE;
+		this.next[agent] = NONE;
+		this.available[agent] = false;
+	}
+
+	@Override
+	public void agentReleased(int agent, int district, long time)
+	{
+		if(this.available[agent]) return;
+
+		this.previous[agent] = this.tail;
+		this.next[agent] = NONE;
+
+		if(this.tail == NONE) this.head = agent;
+		else this.next[this.tail] = agent;
+
+		this.tail = agent;
+		this.available[agent] = true;
+	}
+}
@@ -0,0 +1,63 @@
+package it.polito.tdp.simulation;
+
+/**
+ * Dispatches the available agent closest to the crime, visiting the crime's district and then
+ * its neighbours in order of distance, stopping at the first one with available agents.
+ */
+class NearestAvailablePolicy implements DispatchPolicy
+{
+	private DistanceMatrix distances;
+	private AgentStacks availableByDistrict;
+
+
+	@Override
+	public void initialize(DistanceMatrix distances, int numAgents, int startDistrict)
+	{
+		this.distances = distances;
+		this.availableByDistrict = new AgentStacks(distances.size(), numAgents);
+
+		//pushed in reverse, so that agents are dispatched in id order
+		for(int agent=numAgents-1; agent>=0; agent--)
+			this.availableByDistrict.push(startDistrict, agent);
+	}
+
+	@Override
+	public int selectAgent(int crimeDistrict)
+	{
+		return nearestAvailable(this.distances, this.availableByDistrict, crimeDistrict);
+	}
+
+	@Override
+	public void agentDispatched(int agent, int crimeDistrict)
+	{
+		this.availableByDistrict.remove(agent);
+	}
+
+	@Override
+	public void agentReleased(int agent, int district, long time)
+	{
+		this.availableByDistrict.push(district, agent);
+	}
+
+	static int nearestAvailable(DistanceMatrix distances, AgentStacks availableByDistrict, int crimeDistrict)
+	{
+		if(availableByDistrict.size() == 0)
+			return -1;	//no available agents: do not walk all the districts
+
+		if(!availableByDistrict.isEmpty(crimeDistrict))
+			return availableByDistrict.peek(crimeDistrict);
+
+		DistrictAdjacency adjacency = distances.getAdjacency();
+		int degree = adjacency.degree(crimeDistrict);
+
+		for(int k=0; k<degree; k++)
+		{
+			int district = adjacency.neighbour(crimeDistrict, k);
+
+			if(!availableByDistrict.isEmpty(district))
+				return availableByDistrict.peek(district);
+		}
+
+		return -1;
+	}
+}
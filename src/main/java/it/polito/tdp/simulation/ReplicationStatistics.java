@@ -0,0 +1,97 @@
+package it.polito.tdp.simulation;
+
+/**
+ * Summary of the number of bad managed events over independent replications
+ * of the same simulation (sample mean, sample variance, 95% Student-t confidence interval of the mean).
+ */
+public class ReplicationStatistics
+{
+	private static final double Z_95 = 1.959963984540054;
+
+	//97.5% quantiles of Student's t with 1..30 degrees of freedom
+	private static final double[] T_95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+			2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+	private final int numReplications;
+	private final double mean;
+	private final double variance;
+	private final int min;
+	private final int max;
+
+
+	private ReplicationStatistics(int numReplications, double mean, double variance, int min, int max)
+	{
+		this.numReplications = numReplications;
+		this.mean = mean;
+		this.variance = variance;
+		this.min = min;
+		this.max = max;
+	}
+
+	public static ReplicationStatistics of(int[] badManagedEvents)
+	{
+		int n = badManagedEvents.length;
+
+		if(n == 0)
+			throw new IllegalArgumentException("Error: no replications to summarise");
+
+		//Welford's algorithm
+		double mean = 0.0;
+		double m2 = 0.0;
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+
+		for(int i=0; i<n; i++)
+		{
+			int value = badManagedEvents[i];
+			double delta = value - mean;
+			mean += delta / (i + 1);
+			m2 += delta * (value - mean);
+
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		double variance = n > 1 ? m2 / (n - 1) : 0.0;
+		return new ReplicationStatistics(n, mean, variance, min, max);
+	}
+
+	public int getNumReplications() { return this.numReplications; }
+	public double getMean() { return this.mean; }
+	public double getVariance() { return this.variance; }
+	public double getStandardDeviation() { return Math.sqrt(this.variance); }
+	public int getMin() { return this.min; }
+	public int getMax() { return this.max; }
+
+	/**
+	 * Half width of the 95% interval of the mean, with Student's t for n-1 degrees of freedom:
+	 * with the few replications usually run, the normal quantile would make it far too narrow
+	 */
+	public double getConfidenceHalfWidth()
+	{
+		if(this.numReplications < 2) return 0.0;
+
+		return tQuantile95(this.numReplications - 1) * Math.sqrt(this.variance / this.numReplications);
+	}
+
+	//beyond the table, the first term of the Cornish-Fisher expansion around the normal quantile
+	static double tQuantile95(int degreesOfFreedom)
+	{
+		if(degreesOfFreedom <= T_95.length)
+			return T_95[degreesOfFreedom - 1];
+
+		return Z_95 + (Z_95 * Z_95 * Z_95 + Z_95) / (4.0 * degreesOfFreedom);
+	}
+
+	public double getConfidenceLowerBound() { return this.mean - this.getConfidenceHalfWidth(); }
+	public double getConfidenceUpperBound() { return this.mean + this.getConfidenceHalfWidth(); }
+
+	@Override
+	public String toString()
+	{
+		return String.format("ReplicationStatistics [n=%d, mean=%.3f, variance=%.3f, ci95=[%.3f, %.3f], min=%d, max=%d]",
+				this.numReplications, this.mean, this.variance, this.getConfidenceLowerBound(),
+				this.getConfidenceUpperBound(), this.min, this.max);
+	}
+}
@@ -0,0 +1,260 @@
+package it.polito.tdp.simulation;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * All-pairs shortest path distances over a weighted undirected graph given in compressed
+ * sparse row form (the edges of vertex v are targets/weights[offsets[v] .. offsets[v+1]),
+ * with every undirected edge stored in both directions). The result is a dense row-major
+ * n×n matrix, +Infinity between unreachable vertices.
+ * <p>
+ * Dense graphs use a blocked Floyd–Warshall, whose blocks fit in cache and are updated in
+ * parallel; sparse graphs use one Dijkstra run per source, sources split among the cores.
+ */
+class ShortestPaths
+{
+	private static final int BLOCK_SIZE = 64;
+	private static final int SOURCES_PER_TASK = 16;
+
+	private ShortestPaths()
+	{
+	}
+
+	static double[] allPairs(int n, int[] offsets, int[] targets, double[] weights)
+	{
+		DistanceMatrix.checkSize(n);
+
+		//Dijkstra costs about m log n per source, Floyd–Warshall n² per source
+		double numEdges = targets.length / 2.0;
+		double log2n = Math.max(1.0, Math.log(n) / Math.log(2.0));
+
+		if(numEdges * log2n >= (double)n * n)
+			return floydWarshall(n, offsets, targets, weights);
+
+		return dijkstra(n, offsets, targets, weights);
+	}
+
+	static double[] floydWarshall(int n, int[] offsets, int[] targets, double[] weights)
+	{
+		double[] distances = new double[n * n];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+		for(int v=0; v<n; v++)
+		{
+			distances[v * n + v] = 0.0;
+			for(int edge=offsets[v]; edge<offsets[v + 1]; edge++)
+			{
+				int index = v * n + targets[edge];
+				distances[index] = Math.min(distances[index], weights[edge]);
+			}
+		}
+
+		int numBlocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+		for(int kb=0; kb<numBlocks; kb++)
+		{
+			final int k0 = kb * BLOCK_SIZE;
+			final int k1 = Math.min(n, k0 + BLOCK_SIZE);
+			final int pivot = kb;
+
+			//1: the pivot block only depends on itself
+			updateBlock(distances, n, k0, k1, k0, k1, k0, k1);
+
+			//2: the blocks in the pivot's row and column depend on themselves and on the pivot block
+			IntStream.range(0, numBlocks).parallel().forEach(b ->
+			{
+				if(b == pivot) return;
+
+				int b0 = b * BLOCK_SIZE;
+				int b1 = Math.min(n, b0 + BLOCK_SIZE);
+				updateBlock(distances, n, k0, k1, b0, b1, k0, k1);
+				updateBlock(distances, n, b0, b1, k0, k1, k0, k1);
+			});
+
+			//3: all the other blocks only depend on the blocks of step 2, so they are independent
+			IntStream.range(0, numBlocks * numBlocks).parallel().forEach(block ->
+			{
+				int ib = block / numBlocks;
+				int jb = block % numBlocks;
+				if(ib == pivot || jb == pivot) return;
+
+				int i0 = ib * BLOCK_SIZE;
+				int j0 = jb * BLOCK_SIZE;
+				updateBlock(distances, n, i0, Math.min(n, i0 + BLOCK_SIZE), j0, Math.min(n, j0 + BLOCK_SIZE), k0, k1);
+			});
+		}
+
+		return distances;
+	}
+
+	//relaxes d[i][j] through every k in [k0, k1), for i in [i0, i1) and j in [j0, j1)
+	private static void updateBlock(double[] d, int n, int i0, int i1, int j0, int j1, int k0, int k1)
+	{
+		for(int k=k0; k<k1; k++)
+		{
+			int rowK = k * n;
+
+			for(int i=i0; i<i1; i++)
+			{
+				int rowI = i * n;
+				double dik = d[rowI + k];
+				if(dik == Double.POSITIVE_INFINITY) continue;
+
+				for(int j=j0; j<j1; j++)
+				{
+					double candidate = dik + d[rowK + j];
+					if(candidate < d[rowI + j])
+						d[rowI + j] = candidate;
+				}
+			}
+		}
+	}
+
+	static double[] dijkstra(int n, int[] offsets, int[] targets, double[] weights)
+	{
+		double[] distances = new double[n * n];
+		int numTasks = (n + SOURCES_PER_TASK - 1) / SOURCES_PER_TASK;
+
+		IntStream.range(0, numTasks).parallel().forEach(task ->
+		{
+			//one heap per task, reused by all its sources
+			IndexedHeap heap = new IndexedHeap(n);
+			int from = task * SOURCES_PER_TASK;
+			int to = Math.min(n, from + SOURCES_PER_TASK);
+
+			for(int source=from; source<to; source++)
+				dijkstra(source, n, offsets, targets, weights, distances, heap);
+		});
+
+		return distances;
+	}
+
+	private static void dijkstra(int source, int n, int[] offsets, int[] targets, double[] weights,
+			double[] distances, IndexedHeap heap)
+	{
+		int row = source * n;
+		Arrays.fill(distances, row, row + n, Double.POSITIVE_INFINITY);
+
+		distances[row + source] = 0.0;
+		heap.push(source, 0.0);
+
+		while(!heap.isEmpty())
+		{
+			int v = heap.pop();
+			double dv = distances[row + v];
+
+			for(int edge=offsets[v]; edge<offsets[v + 1]; edge++)
+			{
+				int w = targets[edge];
+				double candidate = dv + weights[edge];
+
+				if(candidate < distances[row + w])
+				{
+					distances[row + w] = candidate;
+					heap.pushOrDecrease(w, candidate);
+				}
+			}
+		}
+	}
+
+	//binary min-heap of vertices by key, with decrease-key
+	private static class IndexedHeap
+	{
+		private final int[] heap;
+		private final int[] positions;		//-1 if not in the heap
+		private final double[] keys;
+		private int size;
+
+		IndexedHeap(int n)
+		{
+			this.heap = new int[n];
+			this.positions = new int[n];
+			this.keys = new double[n];
+			Arrays.fill(this.positions, -1);
+		}
+
+		boolean isEmpty()
+		{
+			return this.size == 0;
+		}
+
+		void push(int vertex, double key)
+		{
+			this.keys[vertex] = key;
+			this.heap[this.size] = vertex;
+			this.positions[vertex] = this.size;
+			this.siftUp(this.size++);
+		}
+
+		void pushOrDecrease(int vertex, double key)
+		{
+			if(this.positions[vertex] == -1)
+				this.push(vertex, key);
+			else
+			{
+				this.keys[vertex] = key;
+				this.siftUp(this.positions[vertex]);
+			}
+		}
+
+		int pop()
+		{
+			int top = this.heap[0];
+			this.positions[top] = -1;
+
+			if(--this.size > 0)
+			{
+				this.heap[0] = this.heap[this.size];
+				this.positions[this.heap[0]] = 0;
+				this.siftDown(0);
+			}
+
+			return top;
+		}
+
+		private void siftUp(int position)
+		{
+			int vertex = this.heap[position];
+			double key = this.keys[vertex];
+
+			while(position > 0)
+			{
+				int parent = (position - 1) >>> 1;
+				int parentVertex = this.heap[parent];
+				if(this.keys[parentVertex] <= key) break;
+
+				this.heap[position] = parentVertex;
+				this.positions[parentVertex] = position;
+				position = parent;
+			}
+
+			this.heap[position] = vertex;
+			this.positions[vertex] = position;
+		}
+
+		private void siftDown(int position)
+		{
+			int vertex = this.heap[position];
+			double key = this.keys[vertex];
+			int half = this.size >>> 1;
+
+			while(position < half)
+			{
+				int child = 2 * position + 1;
+				if(child + 1 < this.size && this.keys[this.heap[child + 1]] < this.keys[this.heap[child]])
+					child++;
+
+				int childVertex = this.heap[child];
+				if(this.keys[childVertex] >= key) break;
+
+				this.heap[position] = childVertex;
+				this.positions[childVertex] = position;
+				position = child;
+			}
+
+			this.heap[position] = vertex;
+			this.positions[vertex] = position;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package it.polito.tdp.simulation;
+
+/**
+ * Telemetry of a single Simulator.run(): throughput, queue sizes (sampled after every
+ * processed event), time spent dispatching and processing crimes, and bytes allocated
+ * by the simulating thread (-1 if the JVM cannot measure it).
+ */
+public class SimulationMetrics
+{
+	private final long eventsProcessed;
+	private final long crimesProcessed;
+	private final long elapsedNanos;
+	private final int peakEventsQueueSize;
+	private final double avgEventsQueueSize;
+	private final int peakNotManagedEventsSize;
+	private final double avgNotManagedEventsSize;
+	private final long dispatchNanos;
+	private final long processCrimeNanos;
+	private final long allocatedBytes;
+
+
+	SimulationMetrics(long eventsProcessed, long crimesProcessed, long elapsedNanos,
+			int peakEventsQueueSize, double avgEventsQueueSize, int peakNotManagedEventsSize,
+			double avgNotManagedEventsSize, long dispatchNanos, long processCrimeNanos, long allocatedBytes)
+	{
+		this.eventsProcessed = eventsProcessed;
+		this.crimesProcessed = crimesProcessed;
+		this.elapsedNanos = elapsedNanos;
+		this.peakEventsQueueSize = peakEventsQueueSize;
+		this.avgEventsQueueSize = avgEventsQueueSize;
+		this.peakNotManagedEventsSize = peakNotManagedEventsSize;
+		this.avgNotManagedEventsSize = avgNotManagedEventsSize;
+		this.dispatchNanos = dispatchNanos;
+		this.processCrimeNanos = processCrimeNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public long getEventsProcessed() { return this.eventsProcessed; }
+	public long getCrimesProcessed() { return this.crimesProcessed; }
+	public long getElapsedNanos() { return this.elapsedNanos; }
+	public int getPeakEventsQueueSize() { return this.peakEventsQueueSize; }
+	public double getAvgEventsQueueSize() { return this.avgEventsQueueSize; }
+	public int getPeakNotManagedEventsSize() { return this.peakNotManagedEventsSize; }
+	public double getAvgNotManagedEventsSize() { return this.avgNotManagedEventsSize; }
+	public long getDispatchNanos() { return this.dispatchNanos; }
+	public long getProcessCrimeNanos() { return this.processCrimeNanos; }
+	public long getAllocatedBytes() { return this.allocatedBytes; }
+
+	public double getEventsPerSecond()
+	{
+		if(this.elapsedNanos == 0) return 0.0;
+		return this.eventsProcessed * 1e9 / this.elapsedNanos;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("SimulationMetrics [events=%d, crimes=%d, elapsed=%.3f ms, events/s=%.0f, "
+				+ "eventsQueue(peak=%d, avg=%.2f), notManagedEvents(peak=%d, avg=%.2f), "
+				+ "dispatch=%.3f ms, processCrime=%.3f ms, allocatedBytes=%d]",
+				this.eventsProcessed, this.crimesProcessed, this.elapsedNanos / 1e6, this.getEventsPerSecond(),
+				this.peakEventsQueueSize, this.avgEventsQueueSize, this.peakNotManagedEventsSize,
+				this.avgNotManagedEventsSize, this.dispatchNanos / 1e6, this.processCrimeNanos / 1e6,
+				this.allocatedBytes);
+	}
+}
@@ -0,0 +1,139 @@
+package it.polito.tdp.simulation;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the metrics of the simulation runs recorded into it and,
+ * once registered, exposes them as a JMX MBean
+ */
+public class SimulationMonitor implements SimulationMonitorMXBean
+{
+	public static final String OBJECT_NAME = "it.polito.tdp.simulation:type=SimulationMonitor";
+
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong totalEventsProcessed = new AtomicLong();
+	private final AtomicLong totalElapsedNanos = new AtomicLong();
+	private volatile SimulationMetrics lastMetrics;
+
+
+	public void record(SimulationMetrics metrics)
+	{
+		if(metrics == null) return;
+
+		this.runs.incrementAndGet();
+		this.totalEventsProcessed.addAndGet(metrics.getEventsProcessed());
+		this.totalElapsedNanos.addAndGet(metrics.getElapsedNanos());
+		this.lastMetrics = metrics;
+	}
+
+	public SimulationMetrics getLastMetrics()
+	{
+		return this.lastMetrics;
+	}
+
+	public void registerMBean()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+
+			server.registerMBean(this, name);
+		}
+		catch(JMException jme)
+		{
+			throw new RuntimeException("Error registering MBean " + OBJECT_NAME, jme);
+		}
+	}
+
+	public void unregisterMBean()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			if(server.isRegistered(name))
+				server.unregisterMBean(name);
+		}
+		catch(JMException jme)
+		{
+			throw new RuntimeException("Error unregistering MBean " + OBJECT_NAME, jme);
+		}
+	}
+
+	@Override public long getRuns() { return this.runs.get(); }
+	@Override public long getTotalEventsProcessed() { return this.totalEventsProcessed.get(); }
+	@Override public long getTotalElapsedNanos() { return this.totalElapsedNanos.get(); }
+
+	@Override
+	public long getLastEventsProcessed()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0L : metrics.getEventsProcessed();
+	}
+
+	@Override
+	public double getLastEventsPerSecond()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0.0 : metrics.getEventsPerSecond();
+	}
+
+	@Override
+	public int getLastPeakEventsQueueSize()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0 : metrics.getPeakEventsQueueSize();
+	}
+
+	@Override
+	public double getLastAvgEventsQueueSize()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0.0 : metrics.getAvgEventsQueueSize();
+	}
+
+	@Override
+	public int getLastPeakNotManagedEventsSize()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0 : metrics.getPeakNotManagedEventsSize();
+	}
+
+	@Override
+	public double getLastAvgNotManagedEventsSize()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0.0 : metrics.getAvgNotManagedEventsSize();
+	}
+
+	@Override
+	public long getLastDispatchNanos()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0L : metrics.getDispatchNanos();
+	}
+
+	@Override
+	public long getLastProcessCrimeNanos()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? 0L : metrics.getProcessCrimeNanos();
+	}
+
+	@Override
+	public long getLastAllocatedBytes()
+	{
+		SimulationMetrics metrics = this.lastMetrics;
+		return metrics == null ? -1L : metrics.getAllocatedBytes();
+	}
+}
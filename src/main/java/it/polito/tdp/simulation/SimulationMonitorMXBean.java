@@ -0,0 +1,19 @@
+package it.polito.tdp.simulation;
+
+public interface SimulationMonitorMXBean
+{
+	long getRuns();
+	long getTotalEventsProcessed();
+	long getTotalElapsedNanos();
+
+	//last run
+	long getLastEventsProcessed();
+	double getLastEventsPerSecond();
+	int getLastPeakEventsQueueSize();
+	double getLastAvgEventsQueueSize();
+	int getLastPeakNotManagedEventsSize();
+	double getLastAvgNotManagedEventsSize();
+	long getLastDispatchNanos();
+	long getLastProcessCrimeNanos();
+	long getLastAllocatedBytes();
+}
@@ -1,13 +1,12 @@
 package it.polito.tdp.simulation;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.SplittableRandom;
 
 import org.jgrapht.Graph;
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -18,149 +17,367 @@ public class Simulator
 {
 	//constants
 	private static final double SPEED_IN_KM_H = 60.0;
+	private static final long MAX_RESPONSE_SECONDS = 15 * 60;
+	private static final long SHORT_ANALYSIS_SECONDS = 1 * 60 * 60;
+	private static final long LONG_ANALYSIS_SECONDS = 2 * 60 * 60;
+	private static final int ALL_OTHER_CRIMES = Event.OFFENSE_CATEGORIES.codeOf("all_other_crimes");
+	
+	//event kinds
+	private static final int CRIME = 0;
+	private static final int FREE_AGENT = 1;
 	
 	//input
-	private Graph<Integer, DefaultWeightedEdge> graph;
+	private DistanceMatrix distances;
 	@SuppressWarnings("unused")
 	private int startDistrict;
+	private Iterator<Event> crimes;	//time ordered
+	private int numAgents;			//agents are identified by their index in [0, numAgents)
 	
 	//events
-	private PriorityQueue<Event> notManagedEvents;
-	private PriorityQueue<CrimeEvent> nextEventsQueue;
+	private CrimeBacklog notManagedEvents;
+	private final EventCalendar nextEventsQueue = new EventCalendar();	//at most one CRIME event at a time
+	private Event nextCrime;
+	private int nextCrimeDistrict;
 	
 	//world status
-	private Map<Agent, Integer> agentsInDistricts;	//agent - districtId
-	private LocalDateTime currentTime;
+	private int[] agentsInDistricts;	//agent index -> district index
+	private long currentTime;	//epoch seconds
 	
 	//output
 	private int badManagedEvents;
 	
+	private final SplittableRandom random;
+	private final DispatchPolicy dispatchPolicy;
+	private BacklogPolicy backlogPolicy = BacklogPolicy.OLDEST_FIRST;
+	private VertexLocator vertexLocator = VertexLocator.BY_DISTRICT;
+	
+	//telemetry
+	private boolean metricsEnabled;
+	private SimulationMetrics metrics;
+	private long eventsProcessed;
+	private long crimesProcessed;
+	private int peakEventsQueueSize;
+	private long sumEventsQueueSize;
+	private int peakNotManagedEventsSize;
+	private long sumNotManagedEventsSize;
+	private long dispatchNanos;
+	private long processCrimeNanos;
+	
+	
+	public Simulator()
+	{
+		this(new SplittableRandom());
+	}
+	
+	public Simulator(SplittableRandom random)
+	{
+		this(random, DispatchStrategy.NEAREST_AVAILABLE.newPolicy());
+	}
+	
+	public Simulator(SplittableRandom random, DispatchPolicy dispatchPolicy)
+	{
+		this.random = random;
+		this.dispatchPolicy = dispatchPolicy;
+	}
 	
 	public void initialize(Graph<Integer, DefaultWeightedEdge> graph, int startDistrict,
 			Collection<Event> events, int numAgents)
 	{
-		this.graph = graph;
+		this.initialize(DistanceMatrix.of(graph, SPEED_IN_KM_H), startDistrict, events, numAgents);
+	}
+	
+	public void initialize(DistanceMatrix distances, int startDistrict,
+			Collection<Event> events, int numAgents)
+	{
+		Event[] orderedEvents = events.toArray(new Event[events.size()]);
+		Arrays.sort(orderedEvents, Comparator.comparingLong(Event::getEpochSecond));
+		
+		this.initialize(distances, startDistrict, Arrays.asList(orderedEvents).iterator(), numAgents);
+	}
+	
+	/**
+	 * Initialises a simulation that pulls its crime events from the given iterator, which 
+	 * must return them in time order: only the next crime is held by the simulator, so the
+	 * iterator can stream events of an arbitrarily long horizon (e.g. from an EventCursor)
+	 */
+	public void initialize(DistanceMatrix distances, int startDistrict,
+			Iterator<Event> orderedEvents, int numAgents)
+	{
+		this.distances = distances;
 		this.startDistrict = startDistrict;
+		int startDistrictIndex = distances.indexOf(startDistrict);
 		
-		this.notManagedEvents = new PriorityQueue<>();
-		this.nextEventsQueue = new PriorityQueue<>();
-		this.nextEventsQueue.addAll(events);
+		this.notManagedEvents = new CrimeBacklog(distances, this.backlogPolicy);
+		this.nextEventsQueue.clear();
 		
-		this.currentTime = null;
-		this.agentsInDistricts = new HashMap<>();
+		this.crimes = orderedEvents;
+		this.nextCrime = null;
+		this.scheduleNextCrime();
 		
-		for(int i=1; i<=numAgents; i++)
-		{
-			Agent agent = new Agent(i, true);
-			this.agentsInDistricts.put(agent, startDistrict);
-		}
+		this.currentTime = Long.MIN_VALUE;
+		this.numAgents = numAgents;
+		this.agentsInDistricts = new int[numAgents];
+		Arrays.fill(this.agentsInDistricts, startDistrictIndex);
+		
+		this.dispatchPolicy.initialize(distances, numAgents, startDistrictIndex);
 		
 		this.badManagedEvents = 0;
 	}
 	
 	public void run()
 	{
-		CrimeEvent nextEvent = this.nextEventsQueue.poll();
+		long startNanos = 0L;
+		long startAllocatedBytes = 0L;
+		this.metrics = null;
+		
+		if(this.metricsEnabled)
+		{
+			this.resetMetrics();
+			startAllocatedBytes = currentThreadAllocatedBytes();
+			startNanos = System.nanoTime();
+		}
+		
+		int slot = this.nextEventsQueue.poll();
 		
-		while(nextEvent != null)
+		while(slot != -1)
 		{
-			this.currentTime = nextEvent.getTime();
+			this.currentTime = this.nextEventsQueue.timeOf(slot);
+			int kind = this.nextEventsQueue.kindOf(slot);
+			int payload = this.nextEventsQueue.payloadOf(slot);
+			this.nextEventsQueue.release(slot);
 			
-			if(nextEvent instanceof FreeAgentEvent)
+			if(kind == FREE_AGENT)
 			{
-				FreeAgentEvent freeAgentEvent = (FreeAgentEvent)nextEvent;
-				Agent agentToBeFree = freeAgentEvent.getAgent();
-				agentToBeFree.setAvailable(true);
+				int agentToBeFree = payload;
+				int agentDistrict = this.agentsInDistricts[agentToBeFree];
+				this.dispatchPolicy.agentReleased(agentToBeFree, agentDistrict, this.currentTime);
 				
 				if(!this.notManagedEvents.isEmpty())
 				{
-					Event notManagedEvent = this.notManagedEvents.poll();
-					this.processCrime(notManagedEvent, agentToBeFree);
+					this.badManagedEvents += this.notManagedEvents.removeExpired(this.currentTime);
+					
+					Event notManagedEvent = this.notManagedEvents.pollBest(agentDistrict, this.currentTime);
+					
+					if(notManagedEvent != null)
+						this.timedProcessCrime(notManagedEvent, this.notManagedEvents.getLastPolledDistrict(), 
+								agentToBeFree);
 				}
 			}
-			else if(nextEvent instanceof Event)
+			else if(kind == CRIME)
 			{
-				Event event = (Event)nextEvent;
+				Event event = this.nextCrime;
+				int eventDistrict = this.nextCrimeDistrict;
+				this.scheduleNextCrime();
 				
-				Agent agentInvolved = this.computeAgentInvolvedIn(event);
+				int agentInvolved = this.timedComputeAgentInvolvedIn(eventDistrict);
 				
-				if(agentInvolved != null)
-					this.processCrime(event, agentInvolved);
+				if(agentInvolved != -1)
+					this.timedProcessCrime(event, eventDistrict, agentInvolved);
 				else //no available agents
-					this.notManagedEvents.add(event);
+					this.notManagedEvents.add(event, this.currentTime, eventDistrict);
 			}
 			
-			nextEvent = this.nextEventsQueue.poll();
+			if(this.metricsEnabled)
+				this.sampleQueues(kind);
+			
+			slot = this.nextEventsQueue.poll();
+		}
+		
+		if(this.metricsEnabled)
+		{
+			long elapsedNanos = System.nanoTime() - startNanos;
+			long allocatedBytes = startAllocatedBytes < 0 ? -1L : currentThreadAllocatedBytes() - startAllocatedBytes;
+			
+			this.metrics = new SimulationMetrics(this.eventsProcessed, this.crimesProcessed, elapsedNanos, 
+					this.peakEventsQueueSize, this.average(this.sumEventsQueueSize), 
+					this.peakNotManagedEventsSize, this.average(this.sumNotManagedEventsSize),
+					this.dispatchNanos, this.processCrimeNanos, allocatedBytes);
 		}
 	}
 	
-	private Agent computeAgentInvolvedIn(Event event)
+	private void scheduleNextCrime()
 	{
-		int district = event.getDistrict_id();
-		
-		List<Agent> agentsInOrderOfDistance = new ArrayList<>(this.agentsInDistricts.keySet());
-		agentsInOrderOfDistance.sort((a1, a2) -> 
+		if(!this.crimes.hasNext())
 		{
-			int district1 = this.agentsInDistricts.get(a1);
-			int district2 = this.agentsInDistricts.get(a2);
-			
-			if(district1 == district2) return 0;
-			
-			double distance1 = district == district1 ? 0.0 :
-					this.graph.getEdgeWeight(this.graph.getEdge(district, district1));
-			
-			double distance2 = district == district2 ? 0.0 :
-					this.graph.getEdgeWeight(this.graph.getEdge(district, district2));
-			
-			return Double.compare(distance1, distance2);
-		});
+			this.nextCrime = null;
+			return;
+		}
+		
+		Event crime = this.crimes.next();
+		long crimeTime = crime.getEpochSecond();
+		
+		if(this.nextCrime != null && crimeTime < this.nextCrime.getEpochSecond())
+			throw new IllegalArgumentException("Error: crime events are not in time order");
+		
+		this.nextCrime = crime;
+		this.nextCrimeDistrict = this.distances.indexOf(this.vertexLocator.vertexOf(crime));
+		this.nextEventsQueue.add(crimeTime, CRIME, 0);
+	}
+	
+	private int timedComputeAgentInvolvedIn(int eventDistrict)
+	{
+		if(!this.metricsEnabled)
+			return this.computeAgentInvolvedIn(eventDistrict);
+		
+		long start = System.nanoTime();
+		int agentInvolved = this.computeAgentInvolvedIn(eventDistrict);
+		this.dispatchNanos += System.nanoTime() - start;
 		
-		for(Agent agent : agentsInOrderOfDistance)
+		return agentInvolved;
+	}
+	
+	private void timedProcessCrime(Event event, int eventDistrict, int agent)
+	{
+		if(!this.metricsEnabled)
 		{
-			if(agent.isAvailable())	return agent;
+			this.processCrime(event, eventDistrict, agent);
+			return;
 		}
-		//else
-		return null;	//no available agents 
+		
+		long start = System.nanoTime();
+		this.processCrime(event, eventDistrict, agent);
+		this.processCrimeNanos += System.nanoTime() - start;
+	}
+	
+	//-1 if no available agents
+	int computeAgentInvolvedIn(int eventDistrict)
+	{
+		return this.dispatchPolicy.selectAgent(eventDistrict);
 	}
 
-	public void processCrime(Event event, Agent agent)
+	/**
+	 * Dispatches the agent with the given index, in [0, numAgents), to the crime
+	 */
+	public void processCrime(Event event, int agent)
+	{
+		if(agent < 0 || agent >= this.numAgents)
+			throw new IllegalArgumentException("Error: agent " + agent + " does not exist");
+		
+		this.processCrime(event, this.distances.indexOf(this.vertexLocator.vertexOf(event)), agent);
+	}
+	
+	private void processCrime(Event event, int eventDistrict, int agent)
 	{		
-		agent.setAvailable(false);
+		this.dispatchPolicy.agentDispatched(agent, eventDistrict);
 		
 		//agent leaves
-		int agentDistrict = this.agentsInDistricts.get(agent);
-		int eventDistrict = event.getDistrict_id();
-		double distance = agentDistrict == eventDistrict ? 0.0 :
-				this.graph.getEdgeWeight(this.graph.getEdge(agentDistrict, eventDistrict));
-		
-		double hourTravelDuration = distance / SPEED_IN_KM_H;
-		Duration travelDuration = Duration.ofSeconds((int)(hourTravelDuration * 60.0 * 60.0));
+		int agentDistrict = this.agentsInDistricts[agent];
+		long travelSeconds = this.distances.travelSeconds(agentDistrict, eventDistrict);
 		
 		//agent is arrived
-		LocalDateTime arrivalTime = this.currentTime.plus(travelDuration);
-		this.agentsInDistricts.put(agent, eventDistrict);
-		LocalDateTime crimeTime = event.getTime();
+		long arrivalTime = this.currentTime + travelSeconds;
+		this.agentsInDistricts[agent] = eventDistrict;
+		long crimeTime = event.getEpochSecond();
 
-		if(Duration.between(crimeTime, arrivalTime).compareTo(Duration.ofMinutes(15)) > 0)
+		if(arrivalTime - crimeTime > MAX_RESPONSE_SECONDS)
 			this.badManagedEvents++;	//agent is late
 		
 		//agent analyses the crime
-		Duration crimeAnalysisDuration = null;
-		String category = event.getOffense_category_id();
-		
-		if(!category.equals("all_other_crimes"))
-			crimeAnalysisDuration = Duration.ofHours(2); //hours
+		long crimeAnalysisSeconds;
+		if(event.getOffense_category_code() != ALL_OTHER_CRIMES)
+			crimeAnalysisSeconds = LONG_ANALYSIS_SECONDS;
 		else
-			crimeAnalysisDuration = Math.random() < 0.5 ? Duration.ofHours(1) : Duration.ofHours(2);
+			crimeAnalysisSeconds = this.random.nextBoolean() ? SHORT_ANALYSIS_SECONDS : LONG_ANALYSIS_SECONDS;
 		
 		//generate free agent event
-		LocalDateTime timeOfFree = arrivalTime.plus(crimeAnalysisDuration);
-		FreeAgentEvent newEvent = new FreeAgentEvent(timeOfFree, agent);
-		this.nextEventsQueue.add(newEvent);
+		long timeOfFree = arrivalTime + crimeAnalysisSeconds;
+		this.nextEventsQueue.add(timeOfFree, FREE_AGENT, agent);
 	}
 	
 	public int getNumOfBadManagedEvents()
 	{
 		return this.badManagedEvents;
 	}
+	
+	/**
+	 * Sets how freed agents choose among the crimes waiting for an agent, 
+	 * from the next initialize() on (default: BacklogPolicy.OLDEST_FIRST)
+	 */
+	public void setBacklogPolicy(BacklogPolicy backlogPolicy)
+	{
+		this.backlogPolicy = backlogPolicy;
+	}
+	
+	/**
+	 * Sets how crimes are mapped to the vertices of the distance matrix, from the
+	 * next initialize() on (default: VertexLocator.BY_DISTRICT)
+	 */
+	public void setVertexLocator(VertexLocator vertexLocator)
+	{
+		this.vertexLocator = vertexLocator;
+	}
+	
+	EventCalendar getEventsQueue()
+	{
+		return this.nextEventsQueue;
+	}
+	
+	/**
+	 * Enables or disables the collection of SimulationMetrics in the next runs.
+	 * Disabled by default: when disabled, run() does not read any clock.
+	 */
+	public void setMetricsEnabled(boolean metricsEnabled)
+	{
+		this.metricsEnabled = metricsEnabled;
+	}
+	
+	public boolean isMetricsEnabled()
+	{
+		return this.metricsEnabled;
+	}
+	
+	/**
+	 * Returns the metrics of the last run, or null if metrics were disabled
+	 */
+	public SimulationMetrics getMetrics()
+	{
+		return this.metrics;
+	}
+	
+	private void resetMetrics()
+	{
+		this.eventsProcessed = 0L;
+		this.crimesProcessed = 0L;
+		this.peakEventsQueueSize = 0;
+		this.sumEventsQueueSize = 0L;
+		this.peakNotManagedEventsSize = 0;
+		this.sumNotManagedEventsSize = 0L;
+		this.dispatchNanos = 0L;
+		this.processCrimeNanos = 0L;
+	}
+	
+	private void sampleQueues(int kind)
+	{
+		this.eventsProcessed++;
+		if(kind == CRIME) this.crimesProcessed++;
+		
+		int eventsQueueSize = this.nextEventsQueue.size();
+		int notManagedEventsSize = this.notManagedEvents.size();
+		
+		this.peakEventsQueueSize = Math.max(this.peakEventsQueueSize, eventsQueueSize);
+		this.sumEventsQueueSize += eventsQueueSize;
+		this.peakNotManagedEventsSize = Math.max(this.peakNotManagedEventsSize, notManagedEventsSize);
+		this.sumNotManagedEventsSize += notManagedEventsSize;
+	}
+	
+	private double average(long sum)
+	{
+		return this.eventsProcessed == 0 ? 0.0 : (double)sum / this.eventsProcessed;
+	}
+	
+	//-1 if the JVM does not support thread allocation accounting
+	private static long currentThreadAllocatedBytes()
+	{
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		
+		if(threadBean instanceof com.sun.management.ThreadMXBean)
+		{
+			var sunThreadBean = (com.sun.management.ThreadMXBean)threadBean;
+			
+			if(sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled())
+				return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		
+		return -1L;
+	}
 }
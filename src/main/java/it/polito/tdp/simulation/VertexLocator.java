@@ -0,0 +1,16 @@
+package it.polito.tdp.simulation;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Maps a crime to the vertex (district, neighbourhood, grid cell...) of the graph
+ * where the simulation takes place. Must be thread safe: simulations run in parallel.
+ */
+@FunctionalInterface
+public interface VertexLocator
+{
+	/** the vertex is the crime's district (the original city graph) */
+	VertexLocator BY_DISTRICT = Event::getDistrict_id;
+
+	int vertexOf(Event event);
+}
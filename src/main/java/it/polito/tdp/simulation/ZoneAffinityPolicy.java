@@ -0,0 +1,57 @@
+package it.polito.tdp.simulation;
+
+/**
+ * Every agent patrols a home zone (a district): a crime is answered by an available agent
+ * of its zone if there is one, otherwise by the closest available agent. Home zones are
+ * assigned round robin to the districts in order of distance from the start district.
+ */
+class ZoneAffinityPolicy implements DispatchPolicy
+{
+	private DistanceMatrix distances;
+	private int[] homeOfAgent;
+	private AgentStacks availableByHome;
+	private AgentStacks availableByDistrict;
+
+
+	@Override
+	public void initialize(DistanceMatrix distances, int numAgents, int startDistrict)
+	{
+		this.distances = distances;
+		this.homeOfAgent = new int[numAgents];
+		this.availableByHome = new AgentStacks(distances.size(), numAgents);
+		this.availableByDistrict = new AgentStacks(distances.size(), numAgents);
+
+		DistrictAdjacency adjacency = distances.getAdjacency();
+		int numZones = adjacency.degree(startDistrict) + 1;	//the start district and its neighbours
+
+		for(int agent=numAgents-1; agent>=0; agent--)
+		{
+			int zone = agent % numZones;
+			this.homeOfAgent[agent] = zone == 0 ? startDistrict : adjacency.neighbour(startDistrict, zone - 1);
+			this.agentReleased(agent, startDistrict, Long.MIN_VALUE);
+		}
+	}
+
+	@Override
+	public int selectAgent(int crimeDistrict)
+	{
+		if(!this.availableByHome.isEmpty(crimeDistrict))
+			return this.availableByHome.peek(crimeDistrict);
+
+		return NearestAvailablePolicy.nearestAvailable(this.distances, this.availableByDistrict, crimeDistrict);
+	}
+
+	@Override
+	public void agentDispatched(int agent, int crimeDistrict)
+	{
+		this.availableByHome.remove(agent);
+		this.availableByDistrict.remove(agent);
+	}
+
+	@Override
+	public void agentReleased(int agent, int district, long time)
+	{
+		this.availableByHome.push(this.homeOfAgent[agent], agent);
+		this.availableByDistrict.push(district, agent);
+	}
+}